@@ -1,10 +1,22 @@
 package org.faboo.example.twitter;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.faboo.example.twitter.service.AsyncLinkResolver;
 import org.faboo.example.twitter.service.CrawlService;
 import org.faboo.example.twitter.service.Database;
 import org.faboo.example.twitter.service.ForkJoinResolver;
+import org.faboo.example.twitter.service.LinkResolutionService;
+import org.faboo.example.twitter.service.LinkResolver;
 import org.faboo.example.twitter.service.twitter.TwitterService;
+import org.faboo.example.twitter.util.HopCache;
+import org.faboo.example.twitter.util.HostHealth;
+import org.faboo.example.twitter.util.HostThrottle;
+import org.faboo.example.twitter.util.ResolverTraffic;
+import org.faboo.example.twitter.util.ShortenerClassifier;
+import org.faboo.example.twitter.util.UrlCanonicalizer;
 import org.neo4j.driver.Driver;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -13,9 +25,13 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.annotation.Scope;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.List;
 
 @SpringBootApplication
 @PropertySource({"classpath:twitter.properties"})
@@ -34,8 +50,14 @@ public class TwitterApplication {
 
     @Bean
     @Scope(scopeName = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
-    public CrawlService crawlService(Driver driver) throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
-        return new CrawlService(twitterService(), database(driver), forkJoinResolver());
+    public CrawlService crawlService(Driver driver, LinkResolutionService linkResolutionService) {
+        return new CrawlService(twitterService(), database(driver), linkResolutionService);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public LinkResolutionService linkResolutionService(Driver driver, LinkResolver linkResolver,
+                                                       UrlCanonicalizer canonicalizer) {
+        return new LinkResolutionService(linkResolver, canonicalizer, database(driver));
     }
 
     @Bean
@@ -44,7 +66,69 @@ public class TwitterApplication {
     }
 
     @Bean
-    public ForkJoinResolver forkJoinResolver() throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
-        return new ForkJoinResolver();
+    public LinkResolver linkResolver(@Value("${resolver.engine:async}") String engine,
+                                     @Value("${resolver.max-in-flight:1000}") int maxInFlight,
+                                     @Value("${resolver.max-per-host:50}") int maxPerHost,
+                                     @Value("${resolver.failed-host-ttl-minutes:30}") int failedHostTtl,
+                                     HopCache hopCache, ShortenerClassifier classifier,
+                                     MeterRegistry registry)
+            throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
+        HostThrottle throttle = new HostThrottle(maxInFlight, maxPerHost);
+        ResolverTraffic traffic = new ResolverTraffic();
+        FunctionCounter.builder("resolver.traffic.header.bytes", traffic, ResolverTraffic::getHeaderBytes)
+                .register(registry);
+        FunctionCounter.builder("resolver.traffic.skipped.bytes", traffic, ResolverTraffic::getSkippedBodyBytes)
+                .description("declared length of response bodies that were not downloaded")
+                .register(registry);
+        HostHealth hostHealth = new HostHealth(Duration.ofMinutes(failedHostTtl), 100_000, classifier);
+        FunctionCounter.builder("resolver.failed.fast", hostHealth, HostHealth::getFailedFast)
+                .description("links failed without a request, because their host failed recently")
+                .register(registry);
+        switch (engine) {
+            case "async":
+                return new AsyncLinkResolver(hopCache, throttle, classifier, traffic, hostHealth);
+            case "fork-join":
+                return new ForkJoinResolver(hopCache, throttle, classifier, traffic, hostHealth);
+            default:
+                throw new IllegalArgumentException("unknown resolver engine " + engine);
+        }
+    }
+
+    @Bean(initMethod = "load", destroyMethod = "save")
+    public HopCache hopCache(@Value("${resolver.hop-cache.size:100000}") long size,
+                             @Value("${resolver.hop-cache.ttl-days:30}") int ttlDays,
+                             @Value("${resolver.hop-cache.file:hop-cache.tsv}") String file,
+                             MeterRegistry registry) {
+        HopCache hopCache = new HopCache(size, Duration.ofDays(ttlDays), file.isEmpty() ? null : Path.of(file));
+        FunctionCounter.builder("resolver.hop.cache.hits", hopCache, HopCache::getHits)
+                .description("redirect hops answered from the cache, each saved a request")
+                .register(registry);
+        FunctionCounter.builder("resolver.hop.cache.misses", hopCache, HopCache::getMisses)
+                .register(registry);
+        return hopCache;
+    }
+
+    @Bean
+    public ShortenerClassifier shortenerClassifier(@Value("${resolver.shorteners:}") List<String> shorteners,
+                                                   MeterRegistry registry) throws IOException {
+        ShortenerClassifier classifier = new ShortenerClassifier(shorteners);
+        FunctionCounter.builder("resolver.requests.avoided", classifier, ShortenerClassifier::getAvoided)
+                .description("urls taken as final without a request, because their host never redirects")
+                .register(registry);
+        return classifier;
+    }
+
+    @Bean
+    public UrlCanonicalizer urlCanonicalizer(@Value("${resolver.canonical.strip-params:}") List<String> stripParams,
+                                             @Value("${resolver.canonical.remove-trailing-slash:true}") boolean removeTrailingSlash,
+                                             @Value("${resolver.canonical.sort-params:false}") boolean sortParams,
+                                             MeterRegistry registry) {
+        UrlCanonicalizer canonicalizer = new UrlCanonicalizer(
+                stripParams.isEmpty() ? UrlCanonicalizer.DEFAULT_TRACKING_PARAMETERS : stripParams,
+                removeTrailingSlash, sortParams, 100_000);
+        FunctionCounter.builder("resolver.urls.canonicalized", canonicalizer, UrlCanonicalizer::getRewritten)
+                .description("resolved urls changed before they were stored")
+                .register(registry);
+        return canonicalizer;
     }
 }
@@ -0,0 +1,196 @@
+package org.faboo.example.twitter.data;
+
+import java.util.*;
+import java.util.function.LongPredicate;
+
+/**
+ * The friends or followers of a user: their ids in ascending order, with their screen names where known.
+ * Big accounts have tens of thousands of them, a {@link User} with its own properties per neighbour would be far too
+ * heavy. Being sorted, lists are compared by merging them, without any lookup structure.
+ */
+public final class FollowList {
+
+    public static final FollowList EMPTY = new FollowList(new long[0], new String[0]);
+
+    private final long[] ids;
+    private final String[] screenNames;
+
+    private FollowList(long[] ids, String[] screenNames) {
+        this.ids = ids;
+        this.screenNames = screenNames;
+    }
+
+    /**
+     * @param screenNames the screen names of the ids at the same positions, null entries if not known
+     */
+    public static FollowList of(long[] ids, String[] screenNames) {
+        if (ids.length != screenNames.length) {
+            throw new IllegalArgumentException(ids.length + " ids, but " + screenNames.length + " screen names");
+        }
+        if (isSortedAndDistinct(ids)) {
+            return new FollowList(ids.clone(), screenNames.clone());
+        }
+        Integer[] order = new Integer[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> ids[i]));
+        long[] sortedIds = new long[ids.length];
+        String[] sortedNames = new String[ids.length];
+        int size = 0;
+        for (int i : order) {
+            if (size > 0 && sortedIds[size - 1] == ids[i]) {
+                continue;
+            }
+            sortedIds[size] = ids[i];
+            sortedNames[size++] = screenNames[i];
+        }
+        return new FollowList(Arrays.copyOf(sortedIds, size), Arrays.copyOf(sortedNames, size));
+    }
+
+    public static FollowList of(Collection<User> users) {
+        long[] ids = new long[users.size()];
+        String[] screenNames = new String[users.size()];
+        int i = 0;
+        for (User user : users) {
+            ids[i] = user.getId();
+            screenNames[i++] = user.getScreenName();
+        }
+        return of(ids, screenNames);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public String getScreenName(int index) {
+        return screenNames[index];
+    }
+
+    /**
+     * @return a user with only the id and screen name of the neighbour at the index
+     */
+    public User getUser(int index) {
+        Map<String,Object> props = new HashMap<>();
+        props.put("id", ids[index]);
+        props.put("screenName", screenNames[index]);
+        return new User(props);
+    }
+
+    public long[] getIds() {
+        return ids.clone();
+    }
+
+    public boolean contains(long id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /**
+     * @return the neighbours of this list that are not in the other one
+     */
+    public FollowList minus(FollowList other) {
+        long[] resultIds = new long[ids.length];
+        String[] resultNames = new String[ids.length];
+        int size = 0;
+        int j = 0;
+        for (int i = 0; i < ids.length; i++) {
+            while (j < other.ids.length && other.ids[j] < ids[i]) {
+                j++;
+            }
+            if (j == other.ids.length || other.ids[j] != ids[i]) {
+                resultIds[size] = ids[i];
+                resultNames[size++] = screenNames[i];
+            }
+        }
+        return new FollowList(Arrays.copyOf(resultIds, size), Arrays.copyOf(resultNames, size));
+    }
+
+    /**
+     * @return the neighbours in this or the other list, screen names of this list first
+     */
+    public FollowList union(FollowList other) {
+        long[] resultIds = new long[ids.length + other.ids.length];
+        String[] resultNames = new String[resultIds.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length || j < other.ids.length) {
+            if (j == other.ids.length || (i < ids.length && ids[i] <= other.ids[j])) {
+                if (j < other.ids.length && ids[i] == other.ids[j]) {
+                    j++;
+                }
+                resultIds[size] = ids[i];
+                resultNames[size++] = screenNames[i++];
+            } else {
+                resultIds[size] = other.ids[j];
+                resultNames[size++] = other.screenNames[j++];
+            }
+        }
+        return new FollowList(Arrays.copyOf(resultIds, size), Arrays.copyOf(resultNames, size));
+    }
+
+    public FollowList filter(LongPredicate keep) {
+        long[] resultIds = new long[ids.length];
+        String[] resultNames = new String[ids.length];
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (keep.test(ids[i])) {
+                resultIds[size] = ids[i];
+                resultNames[size++] = screenNames[i];
+            }
+        }
+        return new FollowList(Arrays.copyOf(resultIds, size), Arrays.copyOf(resultNames, size));
+    }
+
+    /**
+     * @return ids and screen names of the neighbours from (inclusive) to (exclusive) as query parameters,
+     * so long lists can be written in chunks
+     */
+    public List<Map<String,Object>> toParameters(int from, int to) {
+        int end = Math.min(to, ids.length);
+        List<Map<String,Object>> chunk = new ArrayList<>(Math.max(0, end - from));
+        for (int i = from; i < end; i++) {
+            Map<String,Object> neighbour = new HashMap<>(4);
+            neighbour.put("id", ids[i]);
+            neighbour.put("screenName", screenNames[i]);
+            chunk.add(neighbour);
+        }
+        return chunk;
+    }
+
+    private static boolean isSortedAndDistinct(long[] ids) {
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i - 1] >= ids[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(ids, ((FollowList) o).ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ids);
+    }
+
+    @Override
+    public String toString() {
+        return "FollowList{" +
+                "size=" + ids.length +
+                '}';
+    }
+}
@@ -1,68 +1,96 @@
 package org.faboo.example.twitter.data;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import twitter4j.HashtagEntity;
 import twitter4j.Status;
 import twitter4j.URLEntity;
+import twitter4j.UserMentionEntity;
 
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * A tweet as we store it. Fields are kept typed and compact, the maps handed to the database are only built when
+ * it is written. Hashtags are interned, the same few tags show up on many tweets.
+ */
 public class Tweet {
 
+    private static final Interner<String> hashtagNames = Interners.newWeakInterner();
+    private static final long NONE = -1;
+
+    private final long id;
     private final User user;
-    private final Set<Hashtag> hashtags;
-    private final List<Map<String,Object>> mentionedUsers;
-    private final Map<String,Object> props;
-    private final Long id;
+    private final List<String> hashtags;
+    private final long[] mentionIds;
+    private final String[] mentionScreenNames;
+    private final Set<String> urls;
     private final Tweet quotedTweet;
     private final Tweet retweetedTweet;
-    private final Long inReplyToTweetId;
-    private final Long inReplyToUserId;
-    private final Set<String> urls;
+    private final long inReplyToTweetId;
+    private final long inReplyToUserId;
     private final String inReplyToUserScreenName;
 
-    public Tweet(Status status) {
-        user = new User(status.getUser());
-        hashtags = Arrays.stream(status.getHashtagEntities())
-                .map(HashtagEntity::getText)
-                .map(String::toLowerCase)
-                .map(Hashtag::new)
-                .collect(Collectors.toUnmodifiableSet());
+    private final LocalDateTime createdAt;
+    private final String text;
+    private final boolean isRetweet;
+    private final int favoriteCount;
+    private final int retweetCount;
+    private final String lang;
 
-        mentionedUsers = Arrays.stream(status.getUserMentionEntities())
-                .map(entity -> (Map<String,Object>) new HashMap<String, Object>(
-                        Map.of("id", entity.getId(),
-                                "screenName", entity.getScreenName())))
-                .collect(Collectors.toList());
+    public Tweet(Status status) {
+        this(status, new UserInterner());
+    }
 
-        props = new HashMap<>();
+    /**
+     * @param users the users of the batch the tweet is part of, authors are shared by all its tweets
+     */
+    public Tweet(Status status, UserInterner users) {
+        id = status.getId();
+        user = users.intern(status.getUser());
+
+        HashtagEntity[] hashtagEntities = status.getHashtagEntities();
+        String[] tags = new String[hashtagEntities.length];
+        int tagCount = 0;
+        for (HashtagEntity entity : hashtagEntities) {
+            // same as new Hashtag(text).getName(), without a regex per tag
+            String tag = hashtagNames.intern(entity.getText().toLowerCase().replace("#", ""));
+            if (!contains(tags, tagCount, tag)) {
+                tags[tagCount++] = tag;
+            }
+        }
+        hashtags = List.of(Arrays.copyOf(tags, tagCount));
+
+        UserMentionEntity[] mentions = status.getUserMentionEntities();
+        mentionIds = new long[mentions.length];
+        mentionScreenNames = new String[mentions.length];
+        for (int i = 0; i < mentions.length; i++) {
+            mentionIds[i] = mentions[i].getId();
+            mentionScreenNames[i] = mentions[i].getScreenName();
+        }
 
         urls = Arrays.stream(status.getURLEntities())
                 .map(URLEntity::getExpandedURL)
                 .filter(s -> !s.isBlank())
                 .collect(Collectors.toUnmodifiableSet());
 
-        addToProps(status);
-        id = status.getId();
-
-        if (status.getQuotedStatus() != null) {
-            quotedTweet = new Tweet(status.getQuotedStatus());
-        } else {
-            quotedTweet = null;
-        }
-
-        if (status.getRetweetedStatus() != null) {
-            retweetedTweet = new Tweet(status.getRetweetedStatus());
-        } else {
-            retweetedTweet = null;
-        }
-        inReplyToTweetId = status.getInReplyToStatusId() == -1 ? null : status.getInReplyToStatusId();
-        inReplyToUserId = status.getInReplyToUserId() == -1 ? null : status.getInReplyToUserId();
+        createdAt = status.getCreatedAt() == null ? null :
+                status.getCreatedAt().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
+        text = status.getText();
+        isRetweet = status.isRetweet();
+        favoriteCount = status.getFavoriteCount();
+        retweetCount = status.getRetweetCount();
+        lang = status.getLang();
+
+        quotedTweet = status.getQuotedStatus() == null ? null : new Tweet(status.getQuotedStatus(), users);
+        retweetedTweet = status.getRetweetedStatus() == null ? null : new Tweet(status.getRetweetedStatus(), users);
+        inReplyToTweetId = status.getInReplyToStatusId();
+        inReplyToUserId = status.getInReplyToUserId();
         inReplyToUserScreenName = status.getInReplyToScreenName();
     }
 
-
     public Long getId() {
         return id;
     }
@@ -71,20 +99,43 @@ public class Tweet {
         return user;
     }
 
+    /**
+     * @return ids and screen names of the mentioned users, built on each call
+     */
     public List<Map<String, Object>> getMentionedUsers() {
-        return mentionedUsers;
+        List<Map<String,Object>> mentioned = new ArrayList<>(mentionIds.length);
+        for (int i = 0; i < mentionIds.length; i++) {
+            mentioned.add(Map.of("id", mentionIds[i], "screenName", mentionScreenNames[i]));
+        }
+        return mentioned;
     }
 
     public List<String> getHashtagsTags() {
-        return hashtags.stream().map(Hashtag::getName).collect(Collectors.toList());
+        return hashtags;
     }
 
     public Set<String> getUrls() {
         return urls;
     }
 
+    /**
+     * @return the properties of the (:Tweet) node, built on each call
+     */
     public Map<String, Object> getProps() {
-        return Collections.unmodifiableMap(props);
+        Map<String,Object> props = new HashMap<>(8);
+        if (createdAt != null) {
+            props.put("createdAt", createdAt);
+        }
+        if (text != null) {
+            props.put("text", text);
+        }
+        props.put("isRetweet", isRetweet);
+        props.put("favoriteCount", favoriteCount);
+        props.put("retweetCount", retweetCount);
+        if (lang != null) {
+            props.put("lang", lang);
+        }
+        return props;
     }
 
     public Tweet getQuotedTweet() {
@@ -96,7 +147,7 @@ public class Tweet {
     }
 
     public Long getInReplyToTweetId() {
-        return inReplyToTweetId;
+        return inReplyToTweetId == NONE ? null : inReplyToTweetId;
     }
 
     public String getInReplyToUserScreenName() {
@@ -104,23 +155,17 @@ public class Tweet {
     }
 
     public Long getInReplyToUserId() {
-        return inReplyToUserId;
-    }
-
-    private void addToProps(Status status) {
-        addToMapIfNotNull("createdAt", status.getCreatedAt() == null ? null :
-                status.getCreatedAt().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
-        addToMapIfNotNull("text", status.getText());
-        props.put("isRetweet", status.isRetweet());
-        props.put("favoriteCount", status.getFavoriteCount());
-        props.put("retweetCount", status.getRetweetCount());
-        addToMapIfNotNull("lang", status.getLang());
+        return inReplyToUserId == NONE ? null : inReplyToUserId;
     }
 
-    private void addToMapIfNotNull(String propName, Object value) {
-        if (value != null) {
-            props.put(propName, value);
+    // interned, so the same tag is the same instance
+    private static boolean contains(String[] tags, int count, String tag) {
+        for (int i = 0; i < count; i++) {
+            if (tags[i] == tag) {
+                return true;
+            }
         }
+        return false;
     }
 
     @Override
@@ -128,11 +173,11 @@ public class Tweet {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Tweet tweet = (Tweet) o;
-        return id.equals(tweet.id);
+        return id == tweet.id;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return Long.hashCode(id);
     }
 }
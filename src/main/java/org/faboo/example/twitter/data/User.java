@@ -4,7 +4,6 @@ import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class User {
 
@@ -13,8 +12,8 @@ public class User {
     private final Long id;
     private final String screenName;
 
-    private Set<User> friends = Collections.emptySet();
-    private Set<User> followers = Collections.emptySet();
+    private FollowList friends = FollowList.EMPTY;
+    private FollowList followers = FollowList.EMPTY;
 
     public User(twitter4j.User user) {
         props = new HashMap<>();
@@ -30,39 +29,21 @@ public class User {
         props.putAll(properties);
     }
 
-    public User setFriends(Collection<User> newFriends) {
-        friends = new HashSet<>(newFriends);
+    public User setFriends(FollowList newFriends) {
+        friends = newFriends;
         return this;
     }
 
-    public User setFollowers(Collection<User> newFollowers) {
-        followers = new HashSet<>(newFollowers);
+    public User setFollowers(FollowList newFollowers) {
+        followers = newFollowers;
         return this;
     }
 
-    public List<Map<String, Object>> getFollowersAsMap() {
-        return followers.stream()
-                .map(
-                        entity -> (Map<String,Object>) new HashMap<String, Object>(
-                                Map.of("id", entity.getId(),
-                                        "screenName", entity.getScreenName())))
-                .collect(Collectors.toUnmodifiableList());
-    }
-
-    public Set<User> getFollowers() {
+    public FollowList getFollowers() {
         return followers;
     }
 
-    public List<Map<String, Object>> getFriendsAsMap() {
-        return friends.stream()
-                .map(
-                        entity -> (Map<String,Object>) new HashMap<String, Object>(
-                                Map.of("id", entity.getId(),
-                                        "screenName", entity.getScreenName())))
-                .collect(Collectors.toUnmodifiableList());
-    }
-
-    public Set<User> getFriends() {
+    public FollowList getFriends() {
         return friends;
     }
 
@@ -78,21 +59,77 @@ public class User {
         addToMapIfNotNull("lastScanned", lastScanned);
     }
 
-    public boolean tweetsNeedRescan() {
-        return checkIfOlderThan7Days("tweetsLastScanned");
+    public boolean tweetsNeedRescan(Duration interval) {
+        return hasOpenTimelineCursor() || checkIfOlderThan("tweetsLastScanned", interval);
+    }
+
+    public boolean needRescan(Duration interval) {
+        return checkIfOlderThan("lastScanned", interval);
+    }
+
+    public boolean ffNeedRescan(Duration interval) {
+        return hasOpenFollowsCursor() || checkIfOlderThan("ffLastScanned", interval);
+    }
+
+    /**
+     * @return cursor of the next page of friends to load, -1 to start with the first page
+     */
+    public long getFriendsCursor() {
+        return (Long)props.getOrDefault("friendsCursor", -1L);
+    }
+
+    public void setFriendsCursor(long cursor) {
+        setCursor("friendsCursor", cursor);
+    }
+
+    /**
+     * @return cursor of the next page of followers to load, -1 to start with the first page
+     */
+    public long getFollowersCursor() {
+        return (Long)props.getOrDefault("followersCursor", -1L);
     }
 
-    public boolean needRescan() {
-        return checkIfOlderThan7Days("lastScanned");
+    public void setFollowersCursor(long cursor) {
+        setCursor("followersCursor", cursor);
     }
 
-    public boolean ffNeedRescan() {
-        return checkIfOlderThan7Days("ffLastScanned");
+    /**
+     * @return max id of the next page of the timeline to load, -1 if no load of the timeline stopped mid-way
+     */
+    public long getTimelineCursor() {
+        return (Long)props.getOrDefault("timelineCursor", -1L);
     }
 
-    private boolean checkIfOlderThan7Days(String property) {
+    public void setTimelineCursor(long cursor) {
+        setCursor("timelineCursor", cursor);
+    }
+
+    /**
+     * @return true if loading the timeline stopped mid-way and needs to be continued
+     */
+    public boolean hasOpenTimelineCursor() {
+        return props.containsKey("timelineCursor");
+    }
+
+    /**
+     * @return true if loading friends or followers stopped mid-way and needs to be continued
+     */
+    public boolean hasOpenFollowsCursor() {
+        return props.containsKey("friendsCursor") || props.containsKey("followersCursor");
+    }
+
+    // a finished list has no cursor, the next scan starts with the first page again
+    private void setCursor(String property, long cursor) {
+        if (cursor == 0) {
+            props.remove(property);
+        } else {
+            props.put(property, cursor);
+        }
+    }
+
+    private boolean checkIfOlderThan(String property, Duration interval) {
         LocalDateTime last = (LocalDateTime) props.get(property);
-        return last == null || Duration.between(last, LocalDateTime.now()).toDays() > 7;
+        return last == null || Duration.between(last, LocalDateTime.now()).compareTo(interval) > 0;
     }
 
     public Map<String, Object> getProps() {
@@ -115,6 +152,17 @@ public class User {
         return (Long)props.get("friendsCount");
     }
 
+    public Long getTweetCount() {
+        return (Long)props.get("tweetCount");
+    }
+
+    /**
+     * Takes the properties of a newer snapshot of the same user.
+     */
+    void update(twitter4j.User user) {
+        addToProps(user);
+    }
+
     private void addToProps(twitter4j.User user) {
         props.put("id", user.getId());
         props.put("screenName", user.getScreenName()); // never null
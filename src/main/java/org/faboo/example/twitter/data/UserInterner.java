@@ -0,0 +1,29 @@
+package org.faboo.example.twitter.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out one {@link User} per id for the tweets of a batch, a busy author is on hundreds of them.
+ * The user keeps the newest snapshot seen, judged by its number of tweets, which only grows.
+ * Not thread safe, a batch is read by one thread.
+ */
+public class UserInterner {
+
+    private final Map<Long,User> users = new HashMap<>();
+
+    public User intern(twitter4j.User user) {
+        User known = users.get(user.getId());
+        if (known == null) {
+            known = new User(user);
+            users.put(known.getId(), known);
+        } else if (user.getStatusesCount() > known.getTweetCount()) {
+            known.update(user);
+        }
+        return known;
+    }
+
+    public int size() {
+        return users.size();
+    }
+}
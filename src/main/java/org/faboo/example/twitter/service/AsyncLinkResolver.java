@@ -0,0 +1,101 @@
+package org.faboo.example.twitter.service;
+
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.faboo.example.twitter.util.AsyncRedirectResolver;
+import org.faboo.example.twitter.util.HopCache;
+import org.faboo.example.twitter.util.HostHealth;
+import org.faboo.example.twitter.util.HostThrottle;
+import org.faboo.example.twitter.util.ResolveResult;
+import org.faboo.example.twitter.util.ResolverTraffic;
+import org.faboo.example.twitter.util.ShortenerClassifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpClient;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * Resolves links with the non-blocking java http client. A handful of threads serve all requests, the
+ * {@link HostThrottle} bounds the requests in flight per host and in total.
+ */
+public class AsyncLinkResolver implements LinkResolver {
+
+    private final static Logger log = LoggerFactory.getLogger(AsyncLinkResolver.class);
+
+    private static final int THREADS = 4;
+
+    private final AsyncRedirectResolver resolver;
+    private final ExecutorService executor;
+    private final HopCache hopCache;
+    private final HostThrottle throttle;
+    private final ShortenerClassifier classifier;
+    private final ResolverTraffic traffic;
+    private final HostHealth hostHealth;
+
+    public AsyncLinkResolver(HopCache hopCache, HostThrottle throttle, ShortenerClassifier classifier,
+                             ResolverTraffic traffic, HostHealth hostHealth)
+            throws KeyStoreException, NoSuchAlgorithmException, KeyManagementException {
+
+        executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "async-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpClient httpClient = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .sslContext(SSLContextBuilder.create().loadTrustMaterial(new TrustSelfSignedStrategy()).build())
+                .build();
+        resolver = new AsyncRedirectResolver(httpClient, hopCache, throttle, classifier, traffic, hostHealth);
+        this.hopCache = hopCache;
+        this.throttle = throttle;
+        this.classifier = classifier;
+        this.traffic = traffic;
+        this.hostHealth = hostHealth;
+    }
+
+    @Override
+    public void resolve(Collection<String> links, BiConsumer<String,ResolveResult> consumer) {
+
+        log.debug("start resolving {} urls", links.size());
+        Instant start = Instant.now();
+        // the consumer runs on the calling thread, it may block without stalling the http client
+        BlockingQueue<Map.Entry<String,ResolveResult>> done = new LinkedBlockingQueue<>();
+        // requests beyond the limits wait in the throttle, not in a thread
+        // every link must produce exactly one entry, or the loop below waits forever
+        for (String link : links) {
+            resolver.resolve(link).handle((result, e) ->
+                    done.add(Map.entry(link, e == null ? result : ResolveResult.failed(link, e.toString()))));
+        }
+        try {
+            for (int i = 0; i < links.size(); i++) {
+                Map.Entry<String,ResolveResult> result = done.take();
+                consumer.accept(result.getKey(), result.getValue());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        log.debug("resolving {} links took {} seconds, {}, {}, {}, {}, {}", links.size(),
+                Duration.between(start, Instant.now()).get(ChronoUnit.SECONDS),
+                hopCache, throttle, classifier, traffic, hostHealth);
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+}
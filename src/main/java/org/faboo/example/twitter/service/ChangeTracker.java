@@ -0,0 +1,72 @@
+package org.faboo.example.twitter.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the properties last written per node id, so only properties that changed are written again.
+ * A rescan mostly returns the same values, writing them anyway locks the node and fills the transaction log.
+ * Nodes not remembered, because they were never written or fell out of the cache, are written in full.
+ */
+class ChangeTracker {
+
+    private final String name;
+    private final Cache<Long,Map<String,Object>> written;
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder avoided = new LongAdder();
+
+    ChangeTracker(String name, long maxNodes) {
+        this.name = name;
+        this.written = CacheBuilder.newBuilder().maximumSize(maxNodes).build();
+    }
+
+    /**
+     * @return the properties that differ from the last write, empty if the write can be skipped
+     */
+    Map<String,Object> changes(long id, Map<String,Object> props) {
+        Map<String,Object> last = written.getIfPresent(id);
+        if (last == null) {
+            writes.increment();
+            return props;
+        }
+        Map<String,Object> changed = new HashMap<>();
+        props.forEach((key, value) -> {
+            if (!Objects.equals(value, last.get(key))) {
+                changed.put(key, value);
+            }
+        });
+        (changed.isEmpty() ? avoided : writes).increment();
+        return changed;
+    }
+
+    /**
+     * Call once the transaction writing the properties is committed.
+     */
+    void written(long id, Map<String,Object> props) {
+        Map<String,Object> last = written.getIfPresent(id);
+        Map<String,Object> snapshot = last == null ? new HashMap<>() : new HashMap<>(last);
+        // properties are only ever added or overwritten, never removed
+        snapshot.putAll(props);
+        written.put(id, Collections.unmodifiableMap(snapshot));
+    }
+
+    /**
+     * Call after properties of the node were written some other way, it is written in full the next time.
+     */
+    void forget(long id) {
+        written.invalidate(id);
+    }
+
+    @Override
+    public String toString() {
+        long total = writes.sum() + avoided.sum();
+        return String.format("%s writes avoided: %d of %d (%.1f%%)", name, avoided.sum(), total,
+                total == 0 ? 0.0 : 100.0 * avoided.sum() / total);
+    }
+}
@@ -0,0 +1,92 @@
+package org.faboo.example.twitter.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.faboo.example.twitter.data.Tweet;
+import org.faboo.example.twitter.service.twitter.TwitterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads the tweets replies point to, level by level up the reply chain.
+ * Each level collects the unresolved ids of the whole batch, drops those already stored and fetches the rest in
+ * 100 id lookups. Ids twitter does not return (deleted or protected tweets) are remembered for the whole run, so
+ * they are not requested again and again.
+ */
+class ConversationHydrator {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationHydrator.class);
+
+    private static final int KNOWN_MISSING_CACHE_SIZE = 100_000;
+
+    private final TwitterService twitterService;
+    private final Database database;
+
+    private final Cache<Long,Boolean> knownMissing = CacheBuilder.newBuilder()
+            .maximumSize(KNOWN_MISSING_CACHE_SIZE)
+            .build();
+
+    private int maxChainDepth = 3;
+
+    ConversationHydrator(TwitterService twitterService, Database database) {
+        this.twitterService = twitterService;
+        this.database = database;
+    }
+
+    /**
+     * @return the fetched tweets the given ones (directly or indirectly) reply to, not including the given tweets
+     */
+    Set<Tweet> hydrate(Collection<Tweet> tweets) {
+
+        Set<Long> seen = tweets.stream().map(Tweet::getId).collect(Collectors.toCollection(HashSet::new));
+        Set<Tweet> fetched = new HashSet<>();
+
+        Collection<Tweet> level = tweets;
+        for (int depth = 0; depth < maxChainDepth && !level.isEmpty(); depth++) {
+
+            Set<Long> wanted = level.stream()
+                    .flatMap(ConversationHydrator::withNested)
+                    .map(Tweet::getInReplyToTweetId)
+                    .filter(Objects::nonNull)
+                    .filter(id -> !seen.contains(id))
+                    .filter(id -> knownMissing.getIfPresent(id) == null)
+                    .collect(Collectors.toUnmodifiableSet());
+            if (wanted.isEmpty()) {
+                break;
+            }
+            seen.addAll(wanted);
+
+            Set<Long> missing = database.findMissingTweetsById(wanted);
+            Set<Tweet> result = twitterService.fetchTweets(missing);
+
+            Set<Long> returned = result.stream().map(Tweet::getId).collect(Collectors.toUnmodifiableSet());
+            missing.stream()
+                    .filter(id -> !returned.contains(id))
+                    .forEach(id -> knownMissing.put(id, Boolean.TRUE));
+
+            if (missing.size() != result.size()) {
+                log.info("we could not fetch {} of {} tweets replied to on level {}",
+                        missing.size() - result.size(), missing.size(), depth + 1);
+            }
+            fetched.addAll(result);
+            level = result;
+        }
+        return fetched;
+    }
+
+    void setMaxChainDepth(int maxChainDepth) {
+        this.maxChainDepth = maxChainDepth;
+    }
+
+    int getMaxChainDepth() {
+        return maxChainDepth;
+    }
+
+    private static Stream<Tweet> withNested(Tweet tweet) {
+        return Stream.of(tweet, tweet.getRetweetedTweet(), tweet.getQuotedTweet()).filter(Objects::nonNull);
+    }
+}
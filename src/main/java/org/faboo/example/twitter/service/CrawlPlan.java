@@ -0,0 +1,97 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.service.twitter.Resource;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Estimated size and duration of a crawl, as computed by {@link CrawlPlanner}.
+ */
+class CrawlPlan {
+
+    private final double[] usersPerLevel;
+    private final Map<Resource,Long> requests;
+    private final Map<Resource,Integer> requestsPerWindow;
+
+    CrawlPlan(double[] usersPerLevel, Map<Resource,Long> requests, Map<Resource,Integer> requestsPerWindow) {
+        this.usersPerLevel = usersPerLevel;
+        this.requests = Collections.unmodifiableMap(new EnumMap<>(requests));
+        this.requestsPerWindow = requestsPerWindow;
+    }
+
+    long getUsersOnLevel(int level) {
+        return Math.round(usersPerLevel[level]);
+    }
+
+    int getLevels() {
+        return usersPerLevel.length;
+    }
+
+    long getVisitedUsers() {
+        return Math.round(Arrays.stream(usersPerLevel).sum());
+    }
+
+    Map<Resource,Long> getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return time the requests for the resource take with the rate limit of all tokens, null if there is no
+     * token for the resource
+     */
+    Duration getDuration(Resource resource) {
+        long calls = requests.getOrDefault(resource, 0L);
+        if (calls == 0) {
+            return Duration.ZERO;
+        }
+        int perWindow = requestsPerWindow.getOrDefault(resource, 0);
+        if (perWindow == 0) {
+            return null;
+        }
+        // the first window is available right away
+        long windows = (calls - 1) / perWindow;
+        return CrawlPlanner.RATE_LIMIT_WINDOW.multipliedBy(windows);
+    }
+
+    /**
+     * The resources have separate rate limits, so the slowest one bounds the crawl. As the crawl makes one request
+     * after the other, it can not be faster than the sum of all request latencies either.
+     */
+    Duration getWallClockTime() {
+        long total = requests.values().stream().mapToLong(Long::longValue).sum();
+        Duration wallClock = CrawlPlanner.REQUEST_LATENCY.multipliedBy(total);
+        for (Resource resource : requests.keySet()) {
+            Duration duration = getDuration(resource);
+            if (duration == null) {
+                return null;
+            }
+            if (duration.compareTo(wallClock) > 0) {
+                wallClock = duration;
+            }
+        }
+        return wallClock;
+    }
+
+    static String format(Duration duration) {
+        if (duration == null) {
+            return "never, no token for this resource";
+        }
+        return String.format("%dd %02dh %02dm", duration.toDays(), duration.toHoursPart(), duration.toMinutesPart());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int level = 0; level < usersPerLevel.length; level++) {
+            builder.append(String.format("%n  level %d: %,d users", level, getUsersOnLevel(level)));
+        }
+        requests.forEach((resource, calls) -> builder.append(String.format("%n  %s: %,d requests, %,d per window, %s",
+                resource, calls, requestsPerWindow.getOrDefault(resource, 0), format(getDuration(resource)))));
+        builder.append(String.format("%n  %,d users in %s", getVisitedUsers(), format(getWallClockTime())));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.User;
+import org.faboo.example.twitter.service.twitter.Resource;
+import org.faboo.example.twitter.service.twitter.TwitterService;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Estimates how many users a {@code --follow-user} crawl will visit, how many requests per resource that takes and
+ * how long it will run with the configured tokens. Only uses the counts of the start user and the graph already in
+ * the database, no twitter requests.
+ * The number of users per level is extrapolated from the friends and followers counts of a sample of users around
+ * the start user. Users reached on more than one path are discounted by the share of distinct users two hops
+ * around the start user.
+ */
+class CrawlPlanner {
+
+    static final Duration RATE_LIMIT_WINDOW = Duration.ofMinutes(15);
+
+    // rough time a request takes, bounds the crawl if the rate limits do not
+    static final Duration REQUEST_LATENCY = Duration.ofMillis(500);
+
+    private static final int FF_PAGE_SIZE = 200;
+    private static final int TIMELINE_PAGE_SIZE = 200;
+    // the timeline API only returns the latest tweets of a user
+    private static final int MAX_TIMELINE_TWEETS = 3200;
+    private static final int SAMPLE_SIZE = 1000;
+
+    private final TwitterService twitterService;
+    private final Database database;
+
+    CrawlPlanner(TwitterService twitterService, Database database) {
+        this.twitterService = twitterService;
+        this.database = database;
+    }
+
+    CrawlPlan plan(User seed, int maxDepth, Map<Staleness,Duration> refreshIntervals) {
+
+        Map<Staleness,Double> staleShare = new EnumMap<>(Staleness.class);
+        refreshIntervals.forEach((staleness, interval) -> staleShare.put(staleness,
+                1 - database.getFreshShare(staleness, LocalDateTime.now().minus(interval))));
+
+        Map<Resource,Integer> requestsPerWindow = new EnumMap<>(Resource.class);
+        for (Resource resource : List.of(Resource.USERS_LOOKUP, Resource.TWEETS, Resource.FRIENDS,
+                Resource.FOLLOWERS)) {
+            requestsPerWindow.put(resource, twitterService.getRequestsPerWindow(resource));
+        }
+
+        return estimate(seed, database.sampleUsersAround(seed, SAMPLE_SIZE), database.estimateNovelty(seed),
+                maxDepth, staleShare, requestsPerWindow);
+    }
+
+    /**
+     * Users on level 0 to maxDepth are expanded, the users on maxDepth + 1 only get their tweets loaded.
+     */
+    static CrawlPlan estimate(User seed, List<User> sample, double novelty, int maxDepth,
+                              Map<Staleness,Double> staleShare, Map<Resource,Integer> requestsPerWindow) {
+
+        List<User> users = sample.isEmpty() ? List.of(seed) : sample;
+        double degree = mean(users, u -> neighbours(u));
+
+        double[] levels = new double[maxDepth + 2];
+        levels[0] = 1;
+        levels[1] = neighbours(seed);
+        for (int level = 2; level < levels.length; level++) {
+            levels[level] = levels[level - 1] * degree * novelty;
+        }
+        double others = Arrays.stream(levels).sum() - 1;
+        double otherExpanded = Arrays.stream(levels, 0, maxDepth + 1).sum() - 1;
+
+        Map<Resource,Long> requests = new EnumMap<>(Resource.class);
+        requests.put(Resource.USERS_LOOKUP, Math.round((1 + others) * staleShare.get(Staleness.PROFILE)));
+        requests.put(Resource.TWEETS, Math.round((timelineRequests(seed)
+                + others * mean(users, CrawlPlanner::timelineRequests)) * staleShare.get(Staleness.TWEETS)));
+        requests.put(Resource.FRIENDS, Math.round((ffRequests(seed.getFriendsCount())
+                + otherExpanded * mean(users, u -> ffRequests(u.getFriendsCount())))
+                * staleShare.get(Staleness.FRIENDS_FOLLOWERS)));
+        requests.put(Resource.FOLLOWERS, Math.round((ffRequests(seed.getFollowersCount())
+                + otherExpanded * mean(users, u -> ffRequests(u.getFollowersCount())))
+                * staleShare.get(Staleness.FRIENDS_FOLLOWERS)));
+
+        return new CrawlPlan(levels, requests, requestsPerWindow);
+    }
+
+    private static double mean(List<User> users, ToDoubleFunction<User> function) {
+        return users.stream().mapToDouble(function).average().orElse(0);
+    }
+
+    private static long neighbours(User user) {
+        return count(user.getFriendsCount()) + count(user.getFollowersCount());
+    }
+
+    private static long count(Long count) {
+        return count == null ? 0 : count;
+    }
+
+    // large lists are loaded over several visits, but all pages are requested in the end
+    private static double ffRequests(Long count) {
+        return Math.ceil((double) count(count) / FF_PAGE_SIZE);
+    }
+
+    private static double timelineRequests(User user) {
+        long tweets = user.getTweetCount() == null ? 0 : Math.min(user.getTweetCount(), MAX_TIMELINE_TWEETS);
+        // an empty timeline still takes one request to find out
+        return Math.max(1, Math.ceil((double) tweets / TIMELINE_PAGE_SIZE));
+    }
+}
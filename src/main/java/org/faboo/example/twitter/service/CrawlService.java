@@ -1,31 +1,37 @@
 package org.faboo.example.twitter.service;
 
 import com.google.common.collect.Lists;
+import org.faboo.example.twitter.data.FollowList;
 import org.faboo.example.twitter.data.Hashtag;
 import org.faboo.example.twitter.data.Tweet;
 import org.faboo.example.twitter.data.User;
 import org.faboo.example.twitter.service.twitter.Query;
 import org.faboo.example.twitter.service.twitter.TwitterService;
 import org.faboo.example.twitter.service.twitter.UserNotReadableException;
-import org.faboo.example.twitter.util.ResolveResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 
 public class CrawlService implements ApplicationRunner {
 
     private static final Logger log = LoggerFactory.getLogger(CrawlService.class);
 
+    // longest the refresh loop sleeps before looking for stale users again
+    private static final Duration MAX_REFRESH_SLEEP = Duration.ofMinutes(15);
+
     private final TwitterService twitterService;
     private final Database database;
-    private final ForkJoinResolver urlResolver;
+    private final LinkResolutionService linkResolution;
+    private final ConversationHydrator conversationHydrator;
 
     private final Set<Long> treeScanned = new HashSet<>();
 
@@ -33,10 +39,26 @@ public class CrawlService implements ApplicationRunner {
 
     private boolean resolveUrl = true;
 
-    public CrawlService(TwitterService twitterService, Database database, ForkJoinResolver forkJoinResolver) {
+    // name of the crawl shared with other crawlers, null when crawling alone
+    private String coordinatedCrawl;
+
+    private Duration leaseTtl = Duration.ofMinutes(5);
+
+    private int workers = 1;
+
+    private final Map<Staleness,Duration> refreshIntervals = new EnumMap<>(Staleness.class);
+
+    // only set while following hashtags
+    private HashtagFrontier hashtagFrontier;
+
+    public CrawlService(TwitterService twitterService, Database database, LinkResolutionService linkResolution) {
         this.twitterService = twitterService;
         this.database = database;
-        urlResolver = forkJoinResolver;
+        this.linkResolution = linkResolution;
+        conversationHydrator = new ConversationHydrator(twitterService, database);
+        for (Staleness staleness : Staleness.values()) {
+            refreshIntervals.put(staleness, Staleness.DEFAULT_INTERVAL);
+        }
     }
 
     @Override
@@ -50,7 +72,13 @@ public class CrawlService implements ApplicationRunner {
         log.info("resolving URLs : {}", resolveUrl);
 
         if (args.containsOption("resolve-missing-links")) {
-            resolveUrls();
+            log.info("start resolving missing links");
+            linkResolution.resolveMissing();
+        }
+
+        if (args.containsOption("retry-failed-links")) {
+            log.info("start retrying failed links");
+            linkResolution.retryFailed();
         }
 
         if (args.containsOption("hash")) {
@@ -66,6 +94,45 @@ public class CrawlService implements ApplicationRunner {
 
         log.info("max depth set to {}", maxDepth);
 
+        if (args.containsOption("reply-depth")) {
+            conversationHydrator.setMaxChainDepth(args.getOptionValues("reply-depth").stream()
+                    .map(Integer::parseInt)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("reply-depth needs value")));
+        }
+
+        for (Staleness staleness : Staleness.values()) {
+            if (args.containsOption(staleness.getOption())) {
+                refreshIntervals.put(staleness, args.getOptionValues(staleness.getOption()).stream()
+                        .map(Long::parseLong)
+                        .map(Duration::ofDays)
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException(staleness.getOption() + " needs value")));
+            }
+        }
+
+        if (args.containsOption("coordinated")) {
+            coordinatedCrawl = args.getOptionValues("coordinated").stream()
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("coordinated needs a crawl name"));
+            log.info("coordinating crawl {} with other crawlers", coordinatedCrawl);
+        }
+
+        if (args.containsOption("lease-ttl")) {
+            leaseTtl = args.getOptionValues("lease-ttl").stream()
+                    .map(Long::parseLong)
+                    .map(Duration::ofSeconds)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("lease-ttl needs value"));
+        }
+
+        if (args.containsOption("workers")) {
+            workers = args.getOptionValues("workers").stream()
+                    .map(Integer::parseInt)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("workers needs value"));
+        }
+
         if (args.containsOption("follow-user")) {
             String screenName = args.getOptionValues("follow-user").stream()
                     .findFirst()
@@ -81,10 +148,12 @@ public class CrawlService implements ApplicationRunner {
                         }
 
                     });
-            followUser(user, 0);
-           // followUser(user, 0, false);
-
-            log.info("scanned {} users", treeScanned.size());
+            if (args.containsOption("plan")) {
+                planFollowUser(user);
+            } else {
+                followUser(user, 0);
+                log.info("scanned {} users", treeScanned.size());
+            }
         }
 
         if (args.containsOption("follow-user-hashtags")) {
@@ -109,16 +178,18 @@ public class CrawlService implements ApplicationRunner {
             String startHash = args.getOptionValues("follow-hashtag").stream()
                     .findFirst()
                     .orElseThrow(() -> new IllegalArgumentException("follow-hashtag need value"));
-            Optional<String> nextHashtagToScan = database.getNextHashtagToScan(startHash, maxDepth);
-            while (nextHashtagToScan.isPresent()) {
-                queryForHashtag(new Hashtag(nextHashtagToScan.get()));
-                nextHashtagToScan = database.getNextHashtagToScan(startHash, maxDepth);
-            }
+            followHashtag(new Hashtag(startHash));
         }
         if (args.containsOption("hydrate-tweets")) {
             hydrateTweets();
         }
-        log.info("done crawling");
+        if (args.containsOption("refresh")) {
+            refreshStaleUsers();
+        }
+        log.info("done crawling, waiting for link resolution to finish");
+        linkResolution.awaitIdle();
+        log.info("done resolving links");
+        log.info("{}", database.getWriteStats());
 
     }
 
@@ -136,27 +207,37 @@ public class CrawlService implements ApplicationRunner {
         for (List<Long> ids : Lists.partition(emptyTweets, 1000)) {
             Set<Tweet> tweets = twitterService.fetchTweets(ids);
             cnt += tweets.size();
-            database.persistTweets(tweets);
-            resolveAndPersistUrlInTweets(tweets);
+            persistTweets(tweets);
         }
         log.info("retrieved and stored {} tweets", cnt);
     }
 
+    /**
+     * Each page of the timeline is stored right away, then the max id of the next page is checkpointed on the user.
+     * A timeline that stopped mid-way is continued from there the next time the user is reached.
+     */
     private void fetchAndUpdateTweetsOf(User user) {
 
-        if (!user.tweetsNeedRescan() || user.isProtected()) {
+        if (!user.tweetsNeedRescan(refreshIntervals.get(Staleness.TWEETS)) || user.isProtected()) {
             return;
         }
 
         try {
-            log.debug("start refreshing tweets of User {}", user.getScreenName());
-            Set<Tweet> tweetsToPersist = new HashSet<>();
-            Set<Tweet> tweets = twitterService.fetchTimeline(user, database.getMaxTweetIdForUser(user));
-            tweetsToPersist.addAll(fetchMissingInReplyTweets(tweets));
-            tweetsToPersist.addAll(tweets);
-            log.debug("tweets found: {}", tweetsToPersist.size());
-            database.persistTweets(tweetsToPersist);
-            resolveAndPersistUrlInTweets(tweetsToPersist);
+            long maxId = user.hasOpenTimelineCursor()
+                    ? user.getTimelineCursor()
+                    : database.getMaxTweetIdForUser(user);
+            log.debug("start refreshing tweets of User {} at max id {}", user.getScreenName(), maxId);
+            int count = twitterService.fetchTimeline(user, maxId, (page, nextMaxId) -> {
+                persistPage(page);
+                user.setTimelineCursor(nextMaxId);
+                database.persistTimelineCursor(user, nextMaxId);
+            });
+            // the last page may have been a full one, followed by an empty page
+            if (user.hasOpenTimelineCursor()) {
+                user.setTimelineCursor(0);
+                database.persistTimelineCursor(user, 0);
+            }
+            log.debug("tweets found: {}", count);
         } catch (UserNotReadableException e) {
             user.setProtected(true);
             user.setTweetsLastScanned(LocalDateTime.now());
@@ -164,27 +245,44 @@ public class CrawlService implements ApplicationRunner {
         database.persistUsers(Collections.singleton(user));
     }
 
-    private User fetchOrUpdateFriendsAndFollowersOf(User user) {
+    /**
+     * Each page of friends and followers is stored right away, together with the cursor of the next page.
+     * Lists too large to load in one go are continued from that cursor the next time the user is reached.
+     * @param pageUsers gets every friend and follower loaded from twitter, with all their properties
+     */
+    private User fetchOrUpdateFriendsAndFollowersOf(User user, Consumer<User> pageUsers) {
 
-        if (user.ffNeedRescan() && !user.isProtected()) {
+        if (user.ffNeedRescan(refreshIntervals.get(Staleness.FRIENDS_FOLLOWERS)) && !user.isProtected()) {
             try {
                 log.info("start refreshing friends and followers of {}", user.getScreenName());
-                user = twitterService.fillFriendsAndFollowers(user);
+                FollowList storedFriends = database.loadFriends(user);
+                FollowList storedFollowers = database.loadFollowers(user);
+                twitterService.fillFriendsAndFollowers(user,
+                        (friends, cursor) -> {
+                            database.persistFriendsPage(user, friends, cursor, storedFriends);
+                            user.setFriendsCursor(cursor);
+                            friends.forEach(pageUsers);
+                        },
+                        (followers, cursor) -> {
+                            database.persistFollowersPage(user, followers, cursor, storedFollowers);
+                            user.setFollowersCursor(cursor);
+                            followers.forEach(pageUsers);
+                        });
             } catch (UserNotReadableException e) {
                 user.setProtected(true);
             }
             database.persistUsers(Collections.singleton(user));
         } else {
             log.debug("User {} is fresh, skipping", user.getScreenName());
-            user.setFriends(database.loadFriends(user));
-            user.setFollowers(database.loadFollowers(user));
         }
+        user.setFriends(database.loadFriends(user));
+        user.setFollowers(database.loadFollowers(user));
         return user;
     }
 
     private User refreshUser(User user) {
 
-        if (!user.needRescan() || user.isProtected()) {
+        if (!user.needRescan(refreshIntervals.get(Staleness.PROFILE)) || user.isProtected()) {
             return user;
         }
 
@@ -199,16 +297,188 @@ public class CrawlService implements ApplicationRunner {
     }
 
     /**
-     * Updates Users from the given user in recursion.
-     * On the first pass, only loads the tweets. If not on the first pass and
-     * if maxDepth has not been reached, also loads friends and followers of the user
-     * and goes deeper
+     * Keeps the already crawled part of the graph fresh, never returns.
+     * Each turn pulls the stalest users of every {@link Staleness} from the database and refreshes them, as long as
+     * there is API budget for it. Friends and followers that were loaded only partly are continued first.
+     * Only sleeps if no part has both stale users and budget, and then only until
+     * the next budget reset or until the next user gets stale.
+     */
+    private void refreshStaleUsers() {
+
+        log.info("start refreshing stale users with intervals {}", refreshIntervals);
+        do {
+            boolean refreshed = false;
+            long secondsToSleep = MAX_REFRESH_SLEEP.toSeconds();
+            for (Staleness staleness : Staleness.values()) {
+                Duration interval = refreshIntervals.get(staleness);
+                if (!twitterService.hasBudget(staleness.getResources())) {
+                    secondsToSleep = Math.min(secondsToSleep,
+                            twitterService.secondsUntilBudget(staleness.getResources()));
+                    continue;
+                }
+                List<User> stale = staleness == Staleness.FRIENDS_FOLLOWERS
+                        ? database.findUsersWithOpenFollowsCursor(staleness.getBatchSize())
+                        : Collections.emptyList();
+                if (stale.isEmpty()) {
+                    stale = database.findStaleUsers(staleness,
+                            LocalDateTime.now().minus(interval), staleness.getBatchSize());
+                }
+                if (stale.isEmpty()) {
+                    Optional<LocalDateTime> oldest = database.findOldestScan(staleness);
+                    if (oldest.isPresent()) {
+                        secondsToSleep = Math.min(secondsToSleep,
+                                Duration.between(LocalDateTime.now(), oldest.get().plus(interval)).toSeconds());
+                    }
+                    continue;
+                }
+                log.info("refreshing {} of {} stale users", staleness, stale.size());
+                refresh(staleness, stale);
+                refreshed = true;
+            }
+            if (!refreshed) {
+                secondsToSleep = Math.max(1, secondsToSleep);
+                log.info("nothing to refresh with the available budget, sleeping {} seconds", secondsToSleep);
+                try {
+                    Thread.sleep(secondsToSleep * 1000);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        } while (true);
+    }
+
+    private void refresh(Staleness staleness, List<User> users) {
+
+        switch (staleness) {
+            case PROFILE:
+                Set<User> found = twitterService.lookupUsers(
+                        users.stream().map(User::getId).collect(Collectors.toList()));
+                Set<User> toPersist = new HashSet<>(found);
+                users.stream()
+                        .filter(user -> !found.contains(user))
+                        .forEach(user -> {
+                            // deleted or suspended, same handling as in refreshUser
+                            user.setProtected(true);
+                            user.setLastScanned(LocalDateTime.now());
+                            toPersist.add(user);
+                        });
+                database.persistUsers(toPersist);
+                break;
+            case TWEETS:
+                users.forEach(this::fetchAndUpdateTweetsOf);
+                break;
+            case FRIENDS_FOLLOWERS:
+                users.forEach(user -> fetchOrUpdateFriendsAndFollowersOf(user, pageUser -> {}));
+                break;
+        }
+    }
+
+    /**
+     * Updates Users starting from the given user, best first.
+     * Every visited user gets its tweets loaded. If maxDepth has not been reached, also loads friends and
+     * followers of the user and adds them to the frontier. The frontier always expands the pending user with
+     * the highest {@link UserScore}, so the most valuable part of the graph is crawled first.
      * @param user user to start from expanding from
-     * @param currentDepth the current depth
+     * @param currentDepth the depth to start with
      */
     private void followUser(User user, int currentDepth) {
 
-        log.info("following user {} - {} - in level {}", user.getScreenName(), user.getId(), currentDepth);
+        Set<String> seedTags = database.getTopHashtagsFor(user).stream()
+                .map(Hashtag::getName)
+                .collect(Collectors.toUnmodifiableSet());
+        if (coordinatedCrawl == null) {
+            followUsers(new LocalUserFrontier(), Collections.singleton(user), currentDepth, seedTags);
+        } else {
+            followUserCoordinated(user, currentDepth, seedTags);
+        }
+    }
+
+    private void followUsers(UserFrontier frontier, Collection<User> seeds, int startDepth, Set<String> seedTags) {
+
+        seeds.forEach(seed -> frontier.add(seed, startDepth, Double.MAX_VALUE));
+        drain(frontier, seedTags);
+    }
+
+    private void drain(UserFrontier frontier, Set<String> seedTags) {
+
+        Optional<UserFrontier.Candidate> next = frontier.poll();
+        while (next.isPresent()) {
+            visitUser(next.get(), frontier, seedTags);
+            frontier.complete(next.get());
+            next = frontier.poll();
+        }
+    }
+
+    /**
+     * Logs an estimate of the size and duration of following the user, without crawling.
+     */
+    private void planFollowUser(User user) {
+
+        if (user.getFollowersCount() == null || user.getFriendsCount() == null) {
+            try {
+                user = twitterService.lookupUser(user.getId());
+            } catch (UserNotReadableException e) {
+                throw new IllegalArgumentException("user is private, can't plan from here");
+            }
+        }
+        CrawlPlan plan = new CrawlPlanner(twitterService, database).plan(user, maxDepth, refreshIntervals);
+        log.info("plan for following {} with depth {}:{}", user.getScreenName(), maxDepth, plan);
+    }
+
+    /**
+     * Splits the crawl with other crawlers working on the same crawl name, possibly on other machines.
+     * The frontier lives in the database, every user is claimed with a lease before it is visited.
+     * Additional workers in this JVM get their own CrawlService, they only share the twitter tokens.
+     */
+    private void followUserCoordinated(User user, int currentDepth, Set<String> seedTags) {
+
+        String owner = ManagementFactory.getRuntimeMXBean().getName();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 1; i < workers; i++) {
+            CrawlService worker = new CrawlService(twitterService, database, linkResolution);
+            worker.maxDepth = maxDepth;
+            worker.resolveUrl = resolveUrl;
+            worker.coordinatedCrawl = coordinatedCrawl;
+            worker.leaseTtl = leaseTtl;
+            worker.conversationHydrator.setMaxChainDepth(conversationHydrator.getMaxChainDepth());
+            String workerOwner = owner + "-" + i;
+            threads.add(new Thread(() -> worker.drainLeases(workerOwner, seedTags), "crawl-worker-" + i));
+        }
+
+        try (LeasedUserFrontier frontier =
+                     new LeasedUserFrontier(database, coordinatedCrawl, owner + "-0", leaseTtl)) {
+            frontier.add(user, currentDepth, Double.MAX_VALUE);
+            if (frontier.isEmpty()) {
+                log.warn("crawl {} is complete already, start it with a new crawl name to crawl again",
+                        coordinatedCrawl);
+            }
+            threads.forEach(Thread::start);
+            drain(frontier, seedTags);
+        }
+
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void drainLeases(String owner, Set<String> seedTags) {
+
+        try (LeasedUserFrontier frontier = new LeasedUserFrontier(database, coordinatedCrawl, owner, leaseTtl)) {
+            drain(frontier, seedTags);
+        }
+        log.info("worker {} scanned {} users", owner, treeScanned.size());
+    }
+
+    private void visitUser(UserFrontier.Candidate candidate, UserFrontier frontier, Set<String> seedTags) {
+
+        User user = candidate.getUser();
+        int currentDepth = candidate.getDepth();
+        log.info("following user {} - {} - in level {} with score {}",
+                user.getScreenName(), user.getId(), currentDepth, candidate.getScore());
 
         if (treeScanned.contains(user.getId())) {
             log.info("users {} tree already seen, skipping", user.getScreenName());
@@ -226,17 +496,45 @@ public class CrawlService implements ApplicationRunner {
 
         if (currentDepth <= maxDepth) {
             treeScanned.add(user.getId());
-            user = fetchOrUpdateFriendsAndFollowersOf(user);
-            Set<User> collect = Stream.concat(user.getFollowers().stream(), user.getFriends()
-                    .stream())
-                    .collect(Collectors.toUnmodifiableSet());
-            Queue<User> work = new ArrayDeque<>(collect);
-            while (!work.isEmpty()) {
-                followUser(work.poll(), currentDepth + 1);
-                log.debug("still processing {} on depth {}, {} f&f remaining",
-                        user.getScreenName(), currentDepth, work.size());
+            // the pages just loaded have the current counts, also of neighbours not stored before
+            Map<Long,UserScore> pageCounts = new HashMap<>();
+            user = fetchOrUpdateFriendsAndFollowersOf(user,
+                    pageUser -> pageCounts.put(pageUser.getId(), UserScore.counts(pageUser)));
+            FollowList neighbours = user.getFollowers().union(user.getFriends())
+                    .filter(id -> !treeScanned.contains(id));
+            Map<Long,UserScore> scores = new HashMap<>();
+            List<Long> ids = Arrays.stream(neighbours.getIds()).boxed().collect(Collectors.toList());
+            for (List<Long> chunk : Lists.partition(ids, 1000)) {
+                scores.putAll(database.scoreUsers(chunk, seedTags));
+            }
+            List<UserFrontier.Candidate> candidates = new ArrayList<>(neighbours.size());
+            for (int i = 0; i < neighbours.size(); i++) {
+                UserScore score = scores.getOrDefault(neighbours.getId(i), UserScore.UNKNOWN)
+                        .withCountsOf(pageCounts.getOrDefault(neighbours.getId(i), UserScore.UNKNOWN));
+                candidates.add(new UserFrontier.Candidate(neighbours.getUser(i), currentDepth + 1,
+                        score.getScore()));
             }
+            frontier.addAll(candidates);
+        }
+    }
+
+    /**
+     * Scans the hashtags used together with the start hashtag, closest and most used first.
+     * A path of --depth relationships from the start hashtag over tweets reaches (depth + 1) / 2 co-occurrence
+     * hops, which is the distance the frontier is bound to.
+     */
+    private void followHashtag(Hashtag start) {
+
+        hashtagFrontier = new HashtagFrontier(start.getName(), (maxDepth + 1) / 2);
+        hashtagFrontier.warmStart(database);
+        log.info("hashtag frontier of {} warm started with {} hashtags", start.getHashtag(), hashtagFrontier.size());
+
+        Optional<String> nextHashtagToScan = hashtagFrontier.next();
+        while (nextHashtagToScan.isPresent()) {
+            queryForHashtag(new Hashtag(nextHashtagToScan.get()));
+            nextHashtagToScan = hashtagFrontier.next();
         }
+        hashtagFrontier = null;
     }
 
     private void queryTopHashtagForUser(User user) {
@@ -250,6 +548,9 @@ public class CrawlService implements ApplicationRunner {
         queryFor(new Query(Collections.singleton(hashtag.getHashtag())));
         hashtag.setLastScanned(LocalDateTime.now());
         database.persistHashtag(hashtag);
+        if (hashtagFrontier != null) {
+            hashtagFrontier.markScanned(hashtag.getName());
+        }
         updateUsersOfHashtag(hashtag);
     }
 
@@ -258,31 +559,33 @@ public class CrawlService implements ApplicationRunner {
 
        maxDepth = 0;
 
-       users.forEach(user -> followUser(user,0));
+       followUsers(new LocalUserFrontier(), users, 0, Collections.singleton(hashtag.getName()));
     }
 
     private void queryFor(Query query) {
 
         log.info("start querying for '{}'", query.getQueryString());
-        Set<Tweet> tweetsToPersist = new HashSet<>();
-        Set<Tweet> tweets = twitterService.search(query);
-        tweetsToPersist.addAll(fetchMissingInReplyTweets(tweets));
-        tweetsToPersist.addAll(tweets);
-
-        log.info("tweets found: {}", tweetsToPersist.size());
-        database.persistTweets(tweetsToPersist);
-        resolveAndPersistUrlInTweets(tweetsToPersist);
+        int count = twitterService.search(query, this::persistPage);
+        log.info("tweets found: {}", count);
     }
 
-    private void resolveUrls() {
+    /**
+     * Stores a page of tweets as soon as it arrives, together with the tweets they reply to.
+     */
+    private void persistPage(Set<Tweet> page) {
 
-        log.info("start resolving missing links");
-        Collection<String> links;
-        do {
-            links = database.findLinksToResolve();
-            Map<String,ResolveResult> result = urlResolver.resolve(links);
-            database.persistLinks(result);
-        } while (!links.isEmpty());
+        Set<Tweet> tweetsToPersist = new HashSet<>(page);
+        tweetsToPersist.addAll(conversationHydrator.hydrate(page));
+        persistTweets(tweetsToPersist);
+    }
+
+    private void persistTweets(Collection<Tweet> tweets) {
+
+        Set<Long> newlyTagged = database.persistTweets(tweets);
+        if (hashtagFrontier != null) {
+            hashtagFrontier.update(tweets, newlyTagged);
+        }
+        resolveAndPersistUrlInTweets(tweets);
     }
 
     private void resolveAndPersistUrlInTweets(Collection<Tweet> tweets) {
@@ -300,29 +603,12 @@ public class CrawlService implements ApplicationRunner {
             return;
         }
 
-        Map<String,ResolveResult> result = urlResolver.resolve(urls);
-
-        database.persistLinks(result);
-
+        // links of earlier runs or other tweets are resolved already, errors are tried again unless given up
+        Set<String> settled = database.findSettledLinks(urls);
+        urls.removeAll(settled);
+        log.debug("queueing {} links for resolution, skipped {} resolved or dead links", urls.size(), settled.size());
 
+        linkResolution.enqueue(urls);
     }
 
-    private Set<Tweet> fetchMissingInReplyTweets(Set<Tweet> tweets) {
-        Set<Long> locallyKnownTweetIds = tweets.stream().map(Tweet::getId).collect(Collectors.toUnmodifiableSet());
-
-        Set<Long> locallyMissingIds = tweets.stream()
-                .filter(tweet -> tweet.getInReplyToTweetId() != null)
-                .filter(tweet -> ! locallyKnownTweetIds.contains(tweet.getId()))
-                .map(Tweet::getId)
-                .collect(Collectors.toUnmodifiableSet());
-
-        Set<Long> missingTweetsById = database.findMissingTweetsById(locallyMissingIds);
-
-        Set<Tweet> fetchedTweeds = twitterService.fetchTweets(missingTweetsById);
-        if((missingTweetsById.size() - fetchedTweeds.size()) != 0) {
-            log.info("we could not fetch / reference {} tweets from replies ",
-                    missingTweetsById.size() - fetchedTweeds.size());
-        }
-        return fetchedTweeds;
-    }
 }
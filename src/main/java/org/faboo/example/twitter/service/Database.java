@@ -1,15 +1,19 @@
 package org.faboo.example.twitter.service;
 
+import org.faboo.example.twitter.data.FollowList;
 import org.faboo.example.twitter.data.Hashtag;
 import org.faboo.example.twitter.data.Tweet;
 import org.faboo.example.twitter.data.User;
 import org.faboo.example.twitter.util.ResolveResult;
 import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
 import org.neo4j.driver.Session;
+import org.neo4j.driver.Transaction;
 import org.neo4j.driver.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -19,24 +23,65 @@ public class Database {
 
     private static final Logger log = LoggerFactory.getLogger(Database.class);
 
+    private static final int FOLLOWS_CHUNK = 1_000;
+
     private final Driver driver;
+    private final ChangeTracker userWrites = new ChangeTracker("user", 100_000);
+    private final ChangeTracker tweetWrites = new ChangeTracker("tweet", 100_000);
 
     public Database(Driver driver) {
         this.driver = driver;
     }
 
-    void persistTweets(Collection<Tweet> tweets) {
-        log.debug("persisting {} tweets", tweets.size());
+    /**
+     * @return how many user and tweet property writes were skipped, because nothing changed
+     */
+    String getWriteStats() {
+        return userWrites + ", " + tweetWrites;
+    }
+
+    /**
+     * Stores the tweets with their authors. Each author is written once, even if it posted many of the tweets.
+     * Only properties that changed since the last write are written.
+     *
+     * @return the ids of the tweets whose hashtags were stored for the first time
+     */
+    Set<Long> persistTweets(Collection<Tweet> tweets) {
+        Collection<User> authors = distinctAuthors(tweets);
+        log.debug("persisting {} tweets of {} authors", tweets.size(), authors.size());
+
+        List<Map<String,Object>> changedAuthors = new ArrayList<>();
+        for (User author : authors) {
+            Map<String,Object> changes = userWrites.changes(author.getId(), author.getProps());
+            if (!changes.isEmpty()) {
+                changedAuthors.add(Map.of("id", author.getId(), "props", author.getProps(), "changes", changes));
+            }
+        }
+        Map<Long,Map<String,Object>> tweetProps = new HashMap<>();
+        Map<Long,Map<String,Object>> tweetChanges = new HashMap<>();
+        for (Tweet tweet : tweets) {
+            Map<String,Object> props = tweet.getProps();
+            tweetProps.put(tweet.getId(), props);
+            tweetChanges.put(tweet.getId(), tweetWrites.changes(tweet.getId(), props));
+        }
 
+        Set<Long> firstTagged = new HashSet<>();
         try (Session session = driver.session()) {
             session.writeTransaction(tx -> {
+                firstTagged.clear();
+                tx.run(" unwind $authors as author " +
+                       " merge (u:User {id:author.id}) " +
+                       "     on create set u = author.props, u.id = author.id " +
+                       "     on match set u += author.changes ",
+                        parameters("authors", changedAuthors)).consume();
                 for (Tweet tweet : tweets) {
-                    tx.run(" merge (t:Tweet {id:$tweet_id}) " +
+                    boolean tagged = tx.run(
+                           " optional match (known:Tweet {id:$tweet_id})<-[:TAGS]-(:Hashtag) " +
+                           " with count(known) = 0 as firstTagged " +
+                           " merge (t:Tweet {id:$tweet_id}) " +
                            "     on create set t = $tweet_props, t.id = $tweet_id " +
-                           "     on match set t += $tweet_props " +
+                           "     on match set t += $tweet_changes " +
                            " merge (u:User {id:$author_id}) " +
-                           "     on create set u = $author_props, u.id = $author_id " +
-                           "     on match set u += $author_props " +
                            " MERGE (u)-[:POSTS]->(t) " +
                            " foreach(tag in $hashtags | " +
                            "     merge (h:Hashtag {name:tag}) " +
@@ -50,15 +95,19 @@ public class Database {
                            " foreach( url in $urls | " +
                            "     merge (l:Link {url:url}) " +
                            "     merge (l)<-[:CONTAINS]-(t) " +
-                           " ) ",
+                           " ) " +
+                           " return firstTagged",
                             parameters(
                                     "tweet_id", tweet.getId(),
-                                    "tweet_props", tweet.getProps(),
+                                    "tweet_props", tweetProps.get(tweet.getId()),
+                                    "tweet_changes", tweetChanges.get(tweet.getId()),
                                     "author_id", tweet.getUser().getId(),
-                                    "author_props", tweet.getUser().getProps(),
                                     "hashtags", tweet.getHashtagsTags(),
                                     "mentions", tweet.getMentionedUsers(),
-                                    "urls", tweet.getUrls())).consume();
+                                    "urls", tweet.getUrls())).single().get("firstTagged").asBoolean();
+                    if (tagged && !tweet.getHashtagsTags().isEmpty()) {
+                        firstTagged.add(tweet.getId());
+                    }
 
                     if (tweet.getRetweetedTweet() != null) {
                         tx.run(" merge (t:Tweet {id:$t_id}) " +
@@ -66,15 +115,12 @@ public class Database {
                                "     on create set r = $r_props, r.id = $r_id " +
                                " merge (t)-[:RETWEETS]->(r) " +
                                " merge (u:User {id:$ru_id}) " +
-                               "     on create set u = $ru_props, u.id = $ru_id " +
-                               "     on match set u += $ru_props " +
                                " MERGE (u)-[:POSTS]->(r) ",
                                 parameters(
                                         "t_id", tweet.getId(),
                                         "r_id", tweet.getRetweetedTweet().getId(),
                                         "r_props", tweet.getRetweetedTweet().getProps(),
-                                        "ru_id", tweet.getRetweetedTweet().getUser().getId(),
-                                        "ru_props", tweet.getRetweetedTweet().getUser().getProps()
+                                        "ru_id", tweet.getRetweetedTweet().getUser().getId()
                                         )).consume();
                     }
 
@@ -99,51 +145,149 @@ public class Database {
                                         "     on create set q = $q_props, q.id = $q_id " +
                                         " merge (t)-[:QUOTES]->(q) " +
                                         " merge (u:User {id:$qu_id}) " +
-                                        "     on create set u = $qu_props, u.id = $qu_id " +
-                                        "     on match set u += $qu_props " +
                                         " MERGE (u)-[:POSTS]->(q) ",
                                 parameters(
                                         "t_id", tweet.getId(),
                                         "q_id", tweet.getQuotedTweet().getId(),
                                         "q_props", tweet.getQuotedTweet().getProps(),
-                                        "qu_id", tweet.getQuotedTweet().getUser().getId(),
-                                        "qu_props", tweet.getQuotedTweet().getUser().getProps()
+                                        "qu_id", tweet.getQuotedTweet().getUser().getId()
                                 )).consume();
                     }
                 }
                 return null;
             });
         }
+        authors.forEach(author -> userWrites.written(author.getId(), author.getProps()));
+        tweetProps.forEach(tweetWrites::written);
+        return firstTagged;
+    }
+
+    // authors of the tweets and of the tweets they retweet or quote, the newest snapshot of each
+    static Collection<User> distinctAuthors(Collection<Tweet> tweets) {
+        Map<Long,User> authors = new LinkedHashMap<>();
+        for (Tweet tweet : tweets) {
+            for (Tweet t : new Tweet[]{tweet, tweet.getRetweetedTweet(), tweet.getQuotedTweet()}) {
+                if (t != null) {
+                    authors.merge(t.getUser().getId(), t.getUser(), (known, other) ->
+                            tweetCount(other) > tweetCount(known) ? other : known);
+                }
+            }
+        }
+        return authors.values();
     }
 
+    private static long tweetCount(User user) {
+        return user.getTweetCount() == null ? -1 : user.getTweetCount();
+    }
 
+    /**
+     * Stores the users and their friends and followers. Only properties that changed since the last write are
+     * written, users without changes are skipped.
+     */
     void persistUsers(Collection<User> users) {
         log.debug("persisting {} users", users.size());
+        Map<Long,Map<String,Object>> changes = new HashMap<>();
+        users.forEach(user -> changes.put(user.getId(), userWrites.changes(user.getId(), user.getProps())));
         try (Session session = driver.session()) {
             session.writeTransaction(tx -> {
                 for (User user : users) {
-                    tx.run("merge (u:User {id:$user_id}) " +
-                                    "on create set u = $user_props, u.id = $user_id " +
-                                    "on match set u += $user_props " +
-                           " foreach( friend in $friends | " +
-                           "     merge (f:User {id:friend.id}) " +
-                           "         on create set f.id = friend.id, f.screenName = friend.screenName " +
-                           "     merge (u)-[:FOLLOWS]->(f) " +
-                           " ) " +
-                           " foreach( follower in $followers | " +
-                           "     merge (f:User {id:follower.id}) " +
-                           "         on create set f.id = follower.id, f.screenName = follower.screenName " +
-                           "     merge (f)-[:FOLLOWS]->(u) " +
-                           " )",
-                            parameters("user_id", user.getId(),
-                                    "user_props", user.getProps(),
-                                    "friends", user.getFriendsAsMap(),
-                                    "followers", user.getFollowersAsMap())
-                            ).consume();
+                    if (!changes.get(user.getId()).isEmpty()) {
+                        tx.run("merge (u:User {id:$user_id}) " +
+                                        "on create set u = $user_props, u.id = $user_id " +
+                                        "on match set u += $user_changes ",
+                                parameters("user_id", user.getId(),
+                                        "user_props", user.getProps(),
+                                        "user_changes", changes.get(user.getId()))
+                                ).consume();
+                    }
+                    persistFollows(tx, user, user.getFriends(), "merge (u)-[:FOLLOWS]->(f)");
+                    persistFollows(tx, user, user.getFollowers(), "merge (f)-[:FOLLOWS]->(u)");
                 }
                 return null;
             });
         }
+        users.forEach(user -> userWrites.written(user.getId(), user.getProps()));
+    }
+
+    // long lists are written in chunks, so no parameter list for all of them is built at once
+    private void persistFollows(Transaction tx, User user, FollowList follows, String relationship) {
+        for (int from = 0; from < follows.size(); from += FOLLOWS_CHUNK) {
+            tx.run(" match (u:User {id:$user_id}) " +
+                   " unwind $follows as follow " +
+                   " merge (f:User {id:follow.id}) " +
+                   "     on create set f.screenName = follow.screenName " +
+                   relationship,
+                    parameters("user_id", user.getId(),
+                            "follows", follows.toParameters(from, from + FOLLOWS_CHUNK))).consume();
+        }
+    }
+
+    /**
+     * Stores a page of friends together with the cursor of the next page, so loading can continue from here.
+     * @param stored the friends already stored, their relationships are not written again
+     */
+    void persistFriendsPage(User user, List<User> friends, long nextCursor, FollowList stored) {
+        persistFollowsPage(user, friends, nextCursor, stored, "friendsCursor", "merge (u)-[:FOLLOWS]->(f)");
+    }
+
+    /**
+     * Stores a page of followers together with the cursor of the next page, so loading can continue from here.
+     * @param stored the followers already stored, their relationships are not written again
+     */
+    void persistFollowersPage(User user, List<User> followers, long nextCursor, FollowList stored) {
+        persistFollowsPage(user, followers, nextCursor, stored, "followersCursor", "merge (f)-[:FOLLOWS]->(u)");
+    }
+
+    private void persistFollowsPage(User user, List<User> page, long nextCursor, FollowList stored,
+                                    String cursorProperty, String follows) {
+        FollowList added = FollowList.of(page).minus(stored);
+        log.debug("persisting {} {} of {}, {} of them new", page.size(), cursorProperty, user.getScreenName(),
+                added.size());
+
+        List<Map<String,Object>> users = page.stream()
+                .map(f -> Map.<String,Object>of("props", f.getProps(),
+                        "changes", userWrites.changes(f.getId(), f.getProps())))
+                .collect(Collectors.toList());
+        List<Long> addedIds = Arrays.stream(added.getIds()).boxed().collect(Collectors.toList());
+        // the lists contain complete users, so we get their counts for free
+        String statement = String.format(
+                " merge (u:User {id:$user_id}) " +
+                " set u.%s = case when $cursor = 0 then null else $cursor end " +
+                " with u " +
+                " unwind $users as user " +
+                " merge (f:User {id:user.props.id}) " +
+                "     on create set f = user.props " +
+                "     on match set f += user.changes " +
+                " with u, f where f.id in $added " +
+                " %s", cursorProperty, follows);
+        try (Session session = driver.session()) {
+            session.writeTransaction(tx -> {
+                tx.run(statement, parameters(
+                        "user_id", user.getId(),
+                        "cursor", nextCursor,
+                        "users", users,
+                        "added", addedIds)).consume();
+                return null;
+            });
+        }
+        page.forEach(f -> userWrites.written(f.getId(), f.getProps()));
+        // the cursor was written here, the next write of the user must not skip it
+        userWrites.forget(user.getId());
+    }
+
+    /**
+     * Checkpoints the max id of the next page of the timeline of the user, 0 once the timeline is complete.
+     */
+    void persistTimelineCursor(User user, long cursor) {
+        try (Session session = driver.session()) {
+            session.writeTransaction(tx -> {
+                tx.run(" match (u:User {id:$user_id}) " +
+                       " set u.timelineCursor = case when $cursor = 0 then null else $cursor end",
+                        parameters("user_id", user.getId(), "cursor", cursor)).consume();
+                return null;
+            });
+        }
+        userWrites.forget(user.getId());
     }
 
     void persistHashtag(Hashtag hashtag) {
@@ -151,7 +295,7 @@ public class Database {
         try (Session session = driver.session()) {
             session.writeTransaction(tx -> {
                 tx.run(" merge (t:Hashtag {name:$name}) " +
-                       "     on match set t.lastScanned = $lastScanned, " +
+                       "     set t.lastScanned = $lastScanned, " +
                        "         t.lastTweetSeen = $lastTweetSeen",
                         parameters(
                                 "name", hashtag.getName(),
@@ -183,6 +327,7 @@ public class Database {
                     map.put("link", e.getKey());
                     map.put("errorCode", e.getValue().getError().getStatus());
                     map.put("errorMessage", e.getValue().getError().getMessage());
+                    map.put("retry", RetryPolicy.isTransient(e.getValue().getError()));
                     return map;
                 })
                 .collect(Collectors.toList());
@@ -193,6 +338,8 @@ public class Database {
             session.writeTransaction(tx -> {
                         tx.run("foreach( link in $links | " +
                                         " merge (l:Link {url:link.link}) " +
+                                        " remove l.errorCode, l.errorMessage, l.attempts, l.nextAttemptAt, " +
+                                        "   l.deadLetter " +
                                         " merge (u:Url {url:link.url}) " +
                                         " merge (s:Site {name:link.site}) " +
                                         " merge (l)-[:LINKS_TO]->(u)-[:PART_OF]->(s) )",
@@ -203,13 +350,16 @@ public class Database {
         }
         try (Session session = driver.session()) {
             session.writeTransaction(tx -> {
+                // transient errors are tried again after a back off, until the attempts are used up
                 tx.run("foreach( link in $links | " +
                                 " merge (l:Link {url:link.link}) " +
-                                "   on create set l.errorCode = link.errorCode," +
-                                "    l.errorMessage = link.errorMessage" +
-                                "   on match set l.errorCode = link.errorCode, " +
-                                "     l.errorMessage = link.errorMessage )",
-                        parameters("links", errorLinks)
+                                " set l.errorCode = link.errorCode, l.errorMessage = link.errorMessage, " +
+                                "   l.attempts = coalesce(l.attempts, 0) + 1 " +
+                                " set l.nextAttemptAt = case when link.retry and l.attempts <= size($backoff) " +
+                                "     then datetime() + duration({minutes: $backoff[l.attempts - 1]}) end, " +
+                                "   l.deadLetter = case when link.retry and l.attempts <= size($backoff) " +
+                                "     then null else true end )",
+                        parameters("links", errorLinks, "backoff", RetryPolicy.BACKOFF_MINUTES)
                 ).consume();
                 return null;
             });
@@ -226,8 +376,12 @@ public class Database {
         List<Long> ids = new ArrayList<>(toCheck);
         try (Session session= driver.session()) {
 
+            // tweets only referenced by a reply have no text yet, they still count as missing
             return session.readTransaction(tx -> tx.run(
-                    "match (tweet:Tweet) where not(id in $ids)) return tweet.id ",
+                    " unwind $ids as id " +
+                    " optional match (tweet:Tweet {id:id}) " +
+                    " with id, tweet where tweet is null or not exists(tweet.text) " +
+                    " return id",
                     parameters("ids", ids)
             ).stream()
                     .map(record -> record.get("id"))
@@ -236,19 +390,37 @@ public class Database {
         }
     }
 
-    Optional<String> getNextHashtagToScan(String startTag, int depth) {
+    /**
+     * Hashtags used together with any of the given hashtags, with the number of tweets they tag and the given hashtags
+     * they were used with. Used to warm start the {@link HashtagFrontier} level by level.
+     */
+    List<Map<String,Object>> getCooccurringHashtags(Collection<String> tags) {
+
+        if (tags.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> names = new ArrayList<>(tags);
         try (Session session= driver.session()) {
-            // cypher does not permit parameter in variable depth path. We could also use apoc for this,
-            // but right now, this works
-            String statement = String.format(
-                    "match p=(s:Hashtag {name:$startTag})-[:TAGS]->(:Tweet)<-[*1..%s]-(h:Hashtag) " +
-                    "    where not(exists(h.lastScanned)) " +
-                    "    with distinct h.name as hashtag, size((h)-[:TAGS]->()) as weight, length(p) as dist " +
-                    "    return hashtag, dist, weight order by dist,weight desc limit 1", depth);
-            return session.readTransaction(tx -> tx.run(statement, parameters("startTag", startTag)
-            ).stream()
-                    .map(record -> record.get("hashtag").asString())
-                    .findFirst());
+            return session.readTransaction(tx -> tx.run(
+                    " unwind $tags as tag " +
+                    " match (:Hashtag {name:tag})-[:TAGS]->(:Tweet)<-[:TAGS]-(h:Hashtag) " +
+                    " with h, collect(distinct tag) as via " +
+                    " return h.name as hashtag, size((h)-[:TAGS]->()) as weight, " +
+                    "     exists(h.lastScanned) as scanned, via",
+                    parameters("tags", names)).stream()
+                    .map(Record::asMap)
+                    .collect(Collectors.toUnmodifiableList()));
+        }
+    }
+
+    boolean isHashtagScanned(String tag) {
+        try (Session session= driver.session()) {
+            return session.readTransaction(tx -> tx.run(
+                    " match (h:Hashtag {name:$tag}) return exists(h.lastScanned) as scanned",
+                    parameters("tag", tag)).stream()
+                    .map(rec -> rec.get("scanned").asBoolean())
+                    .findFirst().orElse(false));
         }
     }
 
@@ -285,23 +457,263 @@ public class Database {
         }
     }
 
-    Set<User> loadFriends(User user) {
+    FollowList loadFriends(User user) {
+        return loadFollows(user, " match (u:User)-[:FOLLOWS]->(f:User) where u.id = $user_id");
+    }
+
+    FollowList loadFollowers(User user) {
+        return loadFollows(user, " match (u:User)<-[:FOLLOWS]-(f:User) where u.id = $user_id");
+    }
+
+    // only ids and screen names, big accounts have tens of thousands of neighbours
+    private FollowList loadFollows(User user, String match) {
+        try (Session session= driver.session()) {
+            List<Record> records = session.readTransaction(tx -> tx.run(
+                    match + " return f.id as id, f.screenName as screenName order by id",
+                    parameters("user_id", user.getId())).list());
+            long[] ids = new long[records.size()];
+            String[] screenNames = new String[records.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = records.get(i).get("id").asLong();
+                screenNames[i] = records.get(i).get("screenName").asString(null);
+            }
+            return FollowList.of(ids, screenNames);
+        }
+    }
+
+    /**
+     * Collects the data needed to prioritise the given users in the crawl frontier with one query.
+     * Users not yet in the database are missing from the result, counts not stored are {@link UserScore#UNKNOWN_COUNT}.
+     */
+    Map<Long,UserScore> scoreUsers(Collection<Long> userIds, Collection<String> seedHashtags) {
+
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<Long> ids = new ArrayList<>(userIds);
+        List<String> tags = new ArrayList<>(seedHashtags);
         try (Session session= driver.session()) {
             return session.readTransaction(tx -> tx.run(
-                    " match (u:User)-[:FOLLOWS]->(friend:User) where u.id = $user_id" +
-                    " return friend",
-                    parameters("user_id", user.getId())).stream()
-                    .map(rec -> new User(rec.get("friend").asMap())).collect(Collectors.toUnmodifiableSet()));
+                    " unwind $ids as id " +
+                    " match (u:User {id:id}) " +
+                    " optional match (u)-[:POSTS]->(:Tweet)<-[:TAGS]-(h:Hashtag) where h.name in $tags " +
+                    " with u, count(distinct h) as overlap " +
+                    " optional match (u)-[:FOLLOWS]-(n:User) where exists(n.ffLastScanned) " +
+                    " return u.id as id, coalesce(u.followersCount, $unknown) as followers, " +
+                    "     coalesce(u.tweetCount, $unknown) as tweets, overlap, count(distinct n) as crawled",
+                    parameters("ids", ids, "tags", tags, "unknown", UserScore.UNKNOWN_COUNT)).stream()
+                    .collect(Collectors.toUnmodifiableMap(
+                            rec -> rec.get("id").asLong(),
+                            rec -> new UserScore(
+                                    rec.get("followers").asLong(),
+                                    rec.get("tweets").asLong(),
+                                    rec.get("overlap").asLong(),
+                                    rec.get("crawled").asLong()))));
+        }
+    }
+
+    /**
+     * Adds users to the shared frontier of a coordinated crawl. A user already known on a higher depth is
+     * lowered to the new depth and reopened if it was already done. A user done on the same or a lower depth stays
+     * done, so offering the start user of a finished crawl again does not restart it.
+     */
+    void offerLeases(String crawl, Collection<UserFrontier.Candidate> candidates) {
+
+        List<Map<String,Object>> entries = candidates.stream()
+                .map(c -> {
+                    Map<String,Object> map = new HashMap<>();
+                    map.put("id", c.getUser().getId());
+                    map.put("screenName", c.getUser().getScreenName());
+                    map.put("depth", c.getDepth());
+                    map.put("score", c.getScore());
+                    return map;
+                })
+                .collect(Collectors.toList());
+
+        try (Session session = driver.session()) {
+            session.writeTransaction(tx -> {
+                tx.run(" unwind $entries as e " +
+                       " merge (l:CrawlLease {key: $crawl + ':' + e.id}) " +
+                       "     on create set l.crawl = $crawl, l.userId = e.id, l.screenName = e.screenName, " +
+                       "         l.depth = e.depth, l.score = e.score, l.status = 'pending' " +
+                       " with l, e where l.depth > e.depth " +
+                       " set l.depth = e.depth, l.score = e.score, " +
+                       "     l.status = case l.status when 'done' then 'pending' else l.status end",
+                        parameters("crawl", crawl, "entries", entries)).consume();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Claims the pending entry with the highest score, or one whose lease has expired. The lock taken by setting
+     * a property lets us re-check the entry, so two crawlers never claim the same user. Lease times come from the
+     * clock of the database, so crawlers on machines with skewed clocks agree on when a lease expires.
+     */
+    Optional<UserFrontier.Candidate> claimLease(String crawl, String owner, long ttlMillis) {
+        try (Session session = driver.session()) {
+            return session.writeTransaction(tx -> tx.run(
+                    " with timestamp() as now " +
+                    " match (l:CrawlLease {crawl:$crawl}) " +
+                    "     where l.status = 'pending' or (l.status = 'leased' and l.leaseUntil < now) " +
+                    " with l, now order by l.score desc, l.depth limit 1 " +
+                    " set l._lock = true " +
+                    " with l, now where l.status = 'pending' or (l.status = 'leased' and l.leaseUntil < now) " +
+                    " with l, now, l.status = 'leased' as expired, l.owner as previousOwner " +
+                    " set l.status = 'leased', l.owner = $owner, l.leaseUntil = now + $ttlMillis, " +
+                    "     l.leasedDepth = l.depth " +
+                    " remove l._lock " +
+                    " return l.userId as id, l.screenName as screenName, l.depth as depth, l.score as score, " +
+                    "     expired, previousOwner",
+                    parameters("crawl", crawl, "owner", owner, "ttlMillis", ttlMillis)).stream()
+                    .map(rec -> {
+                        if (rec.get("expired").asBoolean()) {
+                            log.info("reclaimed expired lease of {} for user {}",
+                                    rec.get("previousOwner").asString(), rec.get("id").asLong());
+                        }
+                        Map<String,Object> props = new HashMap<>();
+                        props.put("id", rec.get("id").asLong());
+                        props.put("screenName", rec.get("screenName").asString(null));
+                        return new UserFrontier.Candidate(new User(props),
+                                rec.get("depth").asInt(), rec.get("score").asDouble());
+                    })
+                    .findFirst());
         }
     }
 
-    Set<User> loadFollowers(User user) {
+    int renewLeases(String crawl, String owner, long ttlMillis) {
+        try (Session session = driver.session()) {
+            return session.writeTransaction(tx -> tx.run(
+                    " match (l:CrawlLease {crawl:$crawl, owner:$owner}) where l.status = 'leased' " +
+                    " set l.leaseUntil = timestamp() + $ttlMillis " +
+                    " return count(l) as renewed",
+                    parameters("crawl", crawl, "owner", owner, "ttlMillis", ttlMillis)).single()
+                    .get("renewed").asInt());
+        }
+    }
+
+    /**
+     * @return false if the lease expired and was claimed by someone else in the meantime
+     */
+    boolean completeLease(String crawl, String owner, Long userId) {
+        try (Session session = driver.session()) {
+            return session.writeTransaction(tx -> tx.run(
+                    " match (l:CrawlLease {key: $crawl + ':' + $userId}) " +
+                    "     where l.status = 'leased' and l.owner = $owner " +
+                    " set l.status = case when l.depth < l.leasedDepth then 'pending' else 'done' end " +
+                    " remove l.owner, l.leaseUntil " +
+                    " return count(l) as completed",
+                    parameters("crawl", crawl, "owner", owner, "userId", userId)).single()
+                    .get("completed").asInt() > 0);
+        }
+    }
+
+    long countOpenLeases(String crawl) {
+        try (Session session = driver.session()) {
+            return session.readTransaction(tx -> tx.run(
+                    " match (l:CrawlLease {crawl:$crawl}) where l.status <> 'done' return count(l) as open",
+                    parameters("crawl", crawl)).single()
+                    .get("open").asLong());
+        }
+    }
+
+    /**
+     * Users whose data was last scanned before the cutoff, stalest first. Backed by the index on the scan
+     * timestamp. Users never scanned have no timestamp and are not considered stale, the crawl has not reached them.
+     */
+    List<User> findStaleUsers(Staleness staleness, LocalDateTime cutoff, int limit) {
+        try (Session session= driver.session()) {
+            String statement = String.format(
+                    " match (u:User) where u.%1$s < $cutoff and not coalesce(u.isProtected, false) " +
+                    " return u order by u.%1$s limit $limit", staleness.getProperty());
+            return session.readTransaction(tx -> tx.run(statement,
+                    parameters("cutoff", cutoff, "limit", limit)).stream()
+                    .map(rec -> new User(rec.get("u").asMap()))
+                    .collect(Collectors.toUnmodifiableList()));
+        }
+    }
+
+    /**
+     * Users whose friends or followers were loaded only partly and need to be continued.
+     */
+    List<User> findUsersWithOpenFollowsCursor(int limit) {
         try (Session session= driver.session()) {
             return session.readTransaction(tx -> tx.run(
-                    " match (u:User)<-[:FOLLOWS]-(follower:User) where u.id = $user_id" +
-                            " return follower",
+                    " match (u:User) where (exists(u.friendsCursor) or exists(u.followersCursor)) " +
+                    "     and not coalesce(u.isProtected, false) " +
+                    " return u limit $limit",
+                    parameters("limit", limit)).stream()
+                    .map(rec -> new User(rec.get("u").asMap()))
+                    .collect(Collectors.toUnmodifiableList()));
+        }
+    }
+
+    Optional<LocalDateTime> findOldestScan(Staleness staleness) {
+        try (Session session= driver.session()) {
+            String statement = String.format(
+                    " match (u:User) where u.%1$s is not null and not coalesce(u.isProtected, false) " +
+                    " return u.%1$s as oldest order by u.%1$s limit 1", staleness.getProperty());
+            return session.readTransaction(tx -> tx.run(statement).stream()
+                    .map(rec -> rec.get("oldest").asLocalDateTime())
+                    .findFirst());
+        }
+    }
+
+    /**
+     * Users with known counts around the given user, or anywhere in the graph if we know nothing about its
+     * neighbourhood. Used as a sample of the users a crawl from there will meet.
+     */
+    List<User> sampleUsersAround(User user, int limit) {
+        try (Session session= driver.session()) {
+            List<User> neighbours = session.readTransaction(tx -> tx.run(
+                    " match (:User {id:$user_id})-[:FOLLOWS]-(n:User) where exists(n.followersCount) " +
+                    " return distinct n limit $limit",
+                    parameters("user_id", user.getId(), "limit", limit)).stream()
+                    .map(rec -> new User(rec.get("n").asMap()))
+                    .collect(Collectors.toUnmodifiableList()));
+            if (!neighbours.isEmpty()) {
+                return neighbours;
+            }
+            return session.readTransaction(tx -> tx.run(
+                    " match (n:User) where exists(n.followersCount) return n limit $limit",
+                    parameters("limit", limit)).stream()
+                    .map(rec -> new User(rec.get("n").asMap()))
+                    .collect(Collectors.toUnmodifiableList()));
+        }
+    }
+
+    /**
+     * Share of users found two hops away from the given user that are distinct. The rest are reached on more than
+     * one path. 1 if the neighbourhood is not in the graph yet.
+     */
+    double estimateNovelty(User user) {
+        try (Session session= driver.session()) {
+            return session.readTransaction(tx -> tx.run(
+                    " match (s:User {id:$user_id})-[:FOLLOWS]-(:User)-[:FOLLOWS]-(m:User) where m <> s " +
+                    " return count(distinct m) as distinct, count(m) as total",
                     parameters("user_id", user.getId())).stream()
-                    .map(rec -> new User(rec.get("follower").asMap())).collect(Collectors.toUnmodifiableSet()));
+                    .map(rec -> rec.get("total").asLong() == 0 ? 1.0 :
+                            (double) rec.get("distinct").asLong() / rec.get("total").asLong())
+                    .findFirst().orElse(1.0));
+        }
+    }
+
+    /**
+     * Share of all users that were scanned after the cutoff and would not be scanned again.
+     */
+    double getFreshShare(Staleness staleness, LocalDateTime cutoff) {
+        try (Session session= driver.session()) {
+            long all = session.readTransaction(tx -> tx.run("match (u:User) return count(u) as cnt").single()
+                    .get("cnt").asLong());
+            if (all == 0) {
+                return 0;
+            }
+            String statement = String.format(
+                    "match (u:User) where u.%s >= $cutoff return count(u) as cnt", staleness.getProperty());
+            long fresh = session.readTransaction(tx -> tx.run(statement, parameters("cutoff", cutoff)).single()
+                    .get("cnt").asLong());
+            return (double) fresh / all;
         }
     }
 
@@ -339,6 +751,52 @@ public class Database {
         }
     }
 
+    /**
+     * @return the given links that are already resolved to an (:Url), given up as dead letters or waiting for their
+     * next attempt. Queueing the latter again would skip their back off and use up their attempts.
+     */
+    Set<String> findSettledLinks(Collection<String> links) {
+        try (Session session= driver.session()) {
+            return session.readTransaction(tx -> tx.run(
+                    "unwind $links as link " +
+                    " match (l:Link {url:link}) where exists((l)-[:LINKS_TO]->()) or l.deadLetter " +
+                    "   or l.nextAttemptAt > datetime() " +
+                    " return l.url as link",
+                    parameters("links", links)).stream()
+                    .map(rec -> rec.get("link").asString())
+                    .collect(Collectors.toUnmodifiableSet()));
+        }
+    }
+
+    /**
+     * @return links whose next attempt is due, the longest waiting first
+     */
+    Collection<String> findLinksToRetry(int limit) {
+        try (Session session= driver.session()) {
+            return session.readTransaction(tx -> tx.run(
+                    "match (l:Link) where l.nextAttemptAt <= datetime() " +
+                    " return l.url as link order by l.nextAttemptAt limit $limit",
+                    parameters("limit", limit)).stream()
+                    .map(rec -> rec.get("link").asString())
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Makes links that failed before attempts were counted due for their first retry, so
+     * {@link #findLinksToRetry(int)} finds them by the index on nextAttemptAt. Scans all links, but only finds
+     * something the first time it runs on an older database.
+     * @return number of links migrated
+     */
+    int migrateUncountedFailures() {
+        try (Session session = driver.session()) {
+            return session.writeTransaction(tx -> tx.run(
+                    "match (l:Link) where exists(l.errorCode) and not exists(l.attempts) " +
+                    " set l.attempts = 0, l.nextAttemptAt = datetime() " +
+                    " return count(l) as migrated").single().get("migrated").asInt());
+        }
+    }
+
     public Collection<String> findLinksToResolve() {
         try (Session session= driver.session()) {
             return session.readTransaction(tx -> tx.run(
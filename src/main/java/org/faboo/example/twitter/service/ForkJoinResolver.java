@@ -1,5 +1,9 @@
 package org.faboo.example.twitter.service;
 
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
@@ -7,12 +11,19 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.ssl.SSLContextBuilder;
+import org.faboo.example.twitter.util.CachingDnsResolver;
+import org.faboo.example.twitter.util.HopCache;
+import org.faboo.example.twitter.util.HostHealth;
+import org.faboo.example.twitter.util.HostThrottle;
 import org.faboo.example.twitter.util.RedirectResolver;
 import org.faboo.example.twitter.util.ResolveResult;
+import org.faboo.example.twitter.util.ResolverTraffic;
+import org.faboo.example.twitter.util.ShortenerClassifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
+import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -22,20 +33,28 @@ import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
-import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
 
-public class ForkJoinResolver {
+/**
+ * Resolves links on a pool of 500 threads with a blocking http client, one thread per link.
+ */
+public class ForkJoinResolver implements LinkResolver {
 
     private final static Logger log = LoggerFactory.getLogger(ForkJoinResolver.class);
 
+    private static final Duration DNS_TTL = Duration.ofMinutes(10);
+
     private final CloseableHttpClient httpClient;
     private final ForkJoinPool pool;
+    private final HopCache hopCache;
+    private final HostThrottle throttle;
+    private final ShortenerClassifier classifier;
+    private final ResolverTraffic traffic;
+    private final HostHealth hostHealth;
 
-    public ForkJoinResolver() throws KeyStoreException, NoSuchAlgorithmException, KeyManagementException {
-
-        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-        connectionManager.setDefaultMaxPerRoute(50);
-        connectionManager.setMaxTotal(500);
+    public ForkJoinResolver(HopCache hopCache, HostThrottle throttle, ShortenerClassifier classifier,
+                            ResolverTraffic traffic, HostHealth hostHealth) throws KeyStoreException, NoSuchAlgorithmException, KeyManagementException {
 
         SSLContext sslContext = SSLContextBuilder
                 .create()
@@ -43,60 +62,78 @@ public class ForkJoinResolver {
                 .build();
         SSLConnectionSocketFactory connectionFactory =
                 new SSLConnectionSocketFactory(sslContext, new NoopHostnameVerifier());
+        // the connection manager ignores the socket factories of the client builder, they must be registered here
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", connectionFactory)
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                socketFactories, new CachingDnsResolver(DNS_TTL, 10_000));
+        connectionManager.setDefaultMaxPerRoute(50);
+        connectionManager.setMaxTotal(500);
+
         httpClient = HttpClients.custom()
                 .disableCookieManagement()
                 .setConnectionManager(connectionManager)
-                .disableCookieManagement()
-                .setSSLSocketFactory(connectionFactory)
                 .disableRedirectHandling().build();
 
         pool = new ForkJoinPool(500);
+        this.hopCache = hopCache;
+        this.throttle = throttle;
+        this.classifier = classifier;
+        this.traffic = traffic;
+        this.hostHealth = hostHealth;
     }
 
-    public Map<String,ResolveResult> resolve(Collection<String> links) {
+    @Override
+    public void resolve(Collection<String> links, BiConsumer<String,ResolveResult> consumer) {
 
         log.debug("start resolving {} urls", links.size());
         Instant start = Instant.now();
-        ForkJoinTask<Map<String,ResolveResult>> starter = pool.submit(new RecursiveTask<>() {
+        pool.submit(new RecursiveAction() {
             @Override
-            protected Map<String,ResolveResult> compute() {
+            protected void compute() {
 
                 Set<ResolverTask> tasks = new HashSet<>();
 
                 links.forEach(link -> {
-                    ResolverTask task = new ResolverTask(link);
+                    ResolverTask task = new ResolverTask(link, consumer);
                     task.fork();
                     tasks.add(task);
                 });
-                Map<String,ResolveResult> results = new HashMap<>();
-                tasks.forEach(task -> {
-                    Map.Entry<String, ResolveResult> result = task.join();
-                    results.put(result.getKey(), result.getValue());
-                });
-                return results;
+                tasks.forEach(ForkJoinTask::join);
             }
-        });
-        Map<String, ResolveResult> result = starter.join();
-        log.debug("resolving {} links took {} seconds", links.size(),
-                Duration.between(start, Instant.now()).get(ChronoUnit.SECONDS));
-        return result;
+        }).join();
+        log.debug("resolving {} links took {} seconds, {}, {}, {}, {}, {}", links.size(),
+                Duration.between(start, Instant.now()).get(ChronoUnit.SECONDS),
+                hopCache, throttle, classifier, traffic, hostHealth);
     }
 
+    public void close() {
+        pool.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("could not close http client", e);
+        }
+    }
 
-
-    private class ResolverTask extends RecursiveTask<Map.Entry<String,ResolveResult>> {
+    private class ResolverTask extends RecursiveAction {
 
         private final String link;
+        private final BiConsumer<String,ResolveResult> consumer;
 
-        private final RedirectResolver resolver = new RedirectResolver(httpClient);
+        private final RedirectResolver resolver =
+                new RedirectResolver(httpClient, hopCache, throttle, classifier, traffic, hostHealth);
 
-        private ResolverTask(String link) {
+        private ResolverTask(String link, BiConsumer<String,ResolveResult> consumer) {
             this.link = link;
+            this.consumer = consumer;
         }
 
         @Override
-        protected Map.Entry<String,ResolveResult> compute() {
-            return Map.entry(link, resolver.resolve(link));
+        protected void compute() {
+            consumer.accept(link, resolver.resolve(link));
         }
     }
 }
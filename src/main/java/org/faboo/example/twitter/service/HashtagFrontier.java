@@ -0,0 +1,177 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.Tweet;
+
+import java.util.*;
+
+/**
+ * Co-occurrence graph of hashtags around a start hashtag, kept in memory for {@code --follow-hashtag}.
+ * The distance of a hashtag is the number of co-occurrence hops from the start hashtag, its weight the number of
+ * tweets tagged with it. The next hashtag to scan is the closest unscanned one, the heaviest among those.
+ * Fed incrementally from the tweets of every persisted batch, so choosing the next hashtag needs no query.
+ * <p>
+ * The weights of the warm start already count every stored tweet, so only tweets whose hashtags the database stored
+ * for the first time add to them. The co-occurrences are kept as well, a hashtag that comes closer takes its
+ * neighbours with it. Only the co-occurrences of hashtags below the max distance are loaded, hashtags beyond it are
+ * not known until a tweet brings them in.
+ */
+class HashtagFrontier {
+
+    private final Map<String,Entry> entries = new HashMap<>();
+    private final int maxDistance;
+
+    HashtagFrontier(String startTag, int maxDistance) {
+        this.maxDistance = maxDistance;
+        entries.put(startTag, new Entry(0));
+    }
+
+    /**
+     * One-off load of the hashtags already in the database, expanding level by level from the start hashtag.
+     */
+    void warmStart(Database database) {
+        Set<String> level = new HashSet<>(entries.keySet());
+        if (database.isHashtagScanned(level.iterator().next())) {
+            level.forEach(this::markScanned);
+        }
+        for (int distance = 1; distance <= maxDistance && !level.isEmpty(); distance++) {
+            Set<String> nextLevel = new HashSet<>();
+            for (Map<String,Object> row : database.getCooccurringHashtags(level)) {
+                String tag = (String) row.get("hashtag");
+                if (!entries.containsKey(tag)) {
+                    nextLevel.add(tag);
+                }
+                add(tag, distance, (Long) row.get("weight"), (Boolean) row.get("scanned"));
+                @SuppressWarnings("unchecked")
+                List<String> via = (List<String>) row.get("via");
+                link(tag, via);
+            }
+            level = nextLevel;
+        }
+    }
+
+    /**
+     * Adds a hashtag known from the database.
+     */
+    void add(String tag, int distance, long weight, boolean scanned) {
+        Entry entry = entries.computeIfAbsent(tag, t -> new Entry(distance));
+        entry.distance = Math.min(entry.distance, distance);
+        entry.weight = Math.max(entry.weight, weight);
+        entry.scanned |= scanned;
+    }
+
+    /**
+     * Every tweet links all of its hashtags, so each of them is at most one hop further away than the closest one.
+     *
+     * @param newlyTagged the tweets to count, those stored again are already in the weights
+     */
+    void update(Collection<Tweet> tweets, Set<Long> newlyTagged) {
+        for (Tweet tweet : tweets) {
+            List<String> tags = tweet.getHashtagsTags();
+            int closest = Integer.MAX_VALUE;
+            for (String tag : tags) {
+                Entry entry = entries.get(tag);
+                if (entry != null) {
+                    closest = Math.min(closest, entry.distance);
+                }
+            }
+            if (closest == Integer.MAX_VALUE) {
+                // not connected to anything we know, the tweet came from somewhere else
+                continue;
+            }
+            boolean counted = !newlyTagged.contains(tweet.getId());
+            for (String tag : tags) {
+                Entry entry = entries.computeIfAbsent(tag, t -> new Entry(Integer.MAX_VALUE));
+                if (!counted) {
+                    entry.weight++;
+                }
+            }
+            for (String tag : tags) {
+                link(tag, tags);
+                lower(tag, closest + 1);
+            }
+        }
+    }
+
+    /**
+     * Remembers that the hashtag was used together with the others, which must be known already.
+     */
+    private void link(String tag, Collection<String> others) {
+        Entry entry = entries.get(tag);
+        for (String other : others) {
+            if (!other.equals(tag)) {
+                entry.neighbours.add(other);
+                entries.get(other).neighbours.add(tag);
+            }
+        }
+    }
+
+    // a hashtag that comes closer brings its neighbours closer as well
+    private void lower(String tag, int distance) {
+        Entry entry = entries.get(tag);
+        if (entry.distance <= distance) {
+            return;
+        }
+        entry.distance = distance;
+        Deque<Entry> lowered = new ArrayDeque<>();
+        lowered.add(entry);
+        while (!lowered.isEmpty()) {
+            Entry next = lowered.poll();
+            for (String neighbour : next.neighbours) {
+                Entry other = entries.get(neighbour);
+                if (other.distance > next.distance + 1) {
+                    other.distance = next.distance + 1;
+                    lowered.add(other);
+                }
+            }
+        }
+    }
+
+    void markScanned(String tag) {
+        Entry entry = entries.get(tag);
+        if (entry != null) {
+            entry.scanned = true;
+        }
+    }
+
+    Optional<String> next() {
+        String next = null;
+        Entry best = null;
+        for (Map.Entry<String,Entry> candidate : entries.entrySet()) {
+            Entry entry = candidate.getValue();
+            if (entry.scanned || entry.distance > maxDistance) {
+                continue;
+            }
+            if (best == null || entry.distance < best.distance
+                    || (entry.distance == best.distance && entry.weight > best.weight)) {
+                best = entry;
+                next = candidate.getKey();
+            }
+        }
+        return Optional.ofNullable(next);
+    }
+
+    int getMaxDistance() {
+        return maxDistance;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getWeight(String tag) {
+        Entry entry = entries.get(tag);
+        return entry == null ? 0 : entry.weight;
+    }
+
+    private static class Entry {
+
+        private int distance;
+        private long weight;
+        private boolean scanned;
+        private final Set<String> neighbours = new HashSet<>();
+
+        private Entry(int distance) {
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserFrontier} shared by several crawlers through lease records in Neo4j. Each entry is claimed with a
+ * lease that is kept alive by a heartbeat while the crawler works on the user. If a crawler dies, its leases
+ * expire and are claimed again by the others.
+ */
+class LeasedUserFrontier implements UserFrontier, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LeasedUserFrontier.class);
+
+    private static final int CLAIM_ATTEMPTS = 5;
+
+    private final Database database;
+    private final String crawl;
+    private final String owner;
+    private final Duration leaseTtl;
+    private final ScheduledExecutorService heartbeat;
+
+    LeasedUserFrontier(Database database, String crawl, String owner, Duration leaseTtl) {
+        this.database = database;
+        this.crawl = crawl;
+        this.owner = owner;
+        this.leaseTtl = leaseTtl;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lease-heartbeat-" + owner);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, leaseTtl.toSeconds() / 3);
+        heartbeat.scheduleAtFixedRate(this::renew, period, period, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean add(User user, int depth, double score) {
+        addAll(Collections.singleton(new Candidate(user, depth, score)));
+        return true;
+    }
+
+    @Override
+    public void addAll(Collection<Candidate> candidates) {
+        if (!candidates.isEmpty()) {
+            database.offerLeases(crawl, candidates);
+        }
+    }
+
+    /**
+     * Waits while other crawlers still hold leases, as they may add new users to the frontier.
+     */
+    @Override
+    public Optional<Candidate> poll() {
+        do {
+            for (int i = 0; i < CLAIM_ATTEMPTS; i++) {
+                Optional<Candidate> claimed = database.claimLease(crawl, owner, leaseTtl.toMillis());
+                if (claimed.isPresent()) {
+                    return claimed;
+                }
+            }
+            if (isEmpty()) {
+                return Optional.empty();
+            }
+            log.debug("{} waiting for leases held by other crawlers of {}", owner, crawl);
+            try {
+                Thread.sleep(Math.max(1000, leaseTtl.toMillis() / 10));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        } while (true);
+    }
+
+    @Override
+    public void complete(Candidate candidate) {
+        if (!database.completeLease(crawl, owner, candidate.getUser().getId())) {
+            log.warn("lease for user {} expired before {} completed it", candidate.getUser().getId(), owner);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return database.countOpenLeases(crawl) == 0;
+    }
+
+    private void renew() {
+        try {
+            int renewed = database.renewLeases(crawl, owner, leaseTtl.toMillis());
+            log.trace("{} renewed {} leases", owner, renewed);
+        } catch (RuntimeException e) {
+            // the next heartbeat will try again, the lease ttl covers a few missed beats
+            log.error("could not renew leases of " + owner, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+    }
+}
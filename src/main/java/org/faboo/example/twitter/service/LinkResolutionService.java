@@ -0,0 +1,261 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.util.ResolveResult;
+import org.faboo.example.twitter.util.UrlCanonicalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves and persists links in the background, so the crawl never waits for slow web servers.
+ * The crawl only enqueues links, which never blocks. If the queue is full, links are dropped from memory: they
+ * are already stored as unresolved (:Link) nodes, which is our durable spill-over. Once the queue has drained,
+ * the unresolved links are read back from the database.
+ * Results are handed to a persister through a small bounded buffer as soon as each link is resolved, and written in
+ * small batches. A slow link holds up neither the results of its batch nor the memory of the whole batch.
+ * Links that failed with a transient error are tried again in a low priority lane, see {@link RetryPolicy}.
+ * Resolved urls are canonicalized before they are stored, so the same page does not end up as several (:Url) nodes.
+ */
+public class LinkResolutionService {
+
+    private static final Logger log = LoggerFactory.getLogger(LinkResolutionService.class);
+
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int BATCH_SIZE = 500;
+    private static final int DRAINERS = 2;
+    private static final int RESULT_BUFFER = 1_000;
+    private static final int PERSIST_BATCH = 100;
+    private static final int RETRY_BATCH = 100;
+    private static final long RETRY_INTERVAL_SECONDS = 60;
+
+    private final LinkResolver resolver;
+    private final UrlCanonicalizer canonicalizer;
+    private final Database database;
+
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Map.Entry<String,ResolveResult>> results = new ArrayBlockingQueue<>(RESULT_BUFFER);
+    // links queued, being resolved or waiting to be persisted, to not queue a link twice
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final List<Thread> drainers = new ArrayList<>();
+
+    private volatile boolean running;
+    private volatile boolean refillFromDatabase;
+    private volatile boolean retryNow;
+
+    public LinkResolutionService(LinkResolver resolver, UrlCanonicalizer canonicalizer, Database database) {
+        this.resolver = resolver;
+        this.canonicalizer = canonicalizer;
+        this.database = database;
+    }
+
+    public void start() {
+        running = true;
+        for (int i = 0; i < DRAINERS; i++) {
+            Thread thread = new Thread(this::drain, "link-resolution-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            drainers.add(thread);
+        }
+        Thread persister = new Thread(this::persist, "link-persister");
+        persister.setDaemon(true);
+        persister.start();
+        drainers.add(persister);
+        Thread retrier = new Thread(this::retry, "link-retry");
+        retrier.setDaemon(true);
+        retrier.setPriority(Thread.MIN_PRIORITY);
+        retrier.start();
+        drainers.add(retrier);
+    }
+
+    public void stop() {
+        running = false;
+        drainers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Queues links for resolution without blocking. The links must already be stored as (:Link) nodes.
+     */
+    void enqueue(Collection<String> links) {
+        int spilled = 0;
+        for (String link : links) {
+            if (pending.add(link) && !queue.offer(link)) {
+                pending.remove(link);
+                spilled++;
+            }
+        }
+        if (spilled > 0) {
+            log.debug("resolution queue full, {} links left for later", spilled);
+            refillFromDatabase = true;
+        }
+    }
+
+    /**
+     * Resolves all links in the database that are not resolved yet.
+     */
+    void resolveMissing() {
+        refillFromDatabase = true;
+    }
+
+    /**
+     * Retries all failed links whose next attempt is due now, instead of a few every minute.
+     */
+    void retryFailed() {
+        retryNow = true;
+    }
+
+    /**
+     * Waits until all queued links and all links left in the database have been resolved.
+     */
+    void awaitIdle() {
+        while (!pending.isEmpty() || refillFromDatabase || retryNow) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                List<String> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    refill();
+                    continue;
+                }
+                resolveBatch(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("could not refill resolution queue from database", e);
+            }
+        }
+    }
+
+    // only runs while the crawl has nothing queued, so retries never delay new links
+    private void retry() {
+        try {
+            int migrated = database.migrateUncountedFailures();
+            if (migrated > 0) {
+                log.info("counted {} links that failed in earlier versions as due for a retry", migrated);
+            }
+        } catch (RuntimeException e) {
+            log.error("could not migrate failed links", e);
+        }
+        long idleSeconds = 0;
+        while (running) {
+            try {
+                TimeUnit.SECONDS.sleep(1);
+                if (!queue.isEmpty() || refillFromDatabase || (!retryNow && ++idleSeconds < RETRY_INTERVAL_SECONDS)) {
+                    continue;
+                }
+                idleSeconds = 0;
+                List<String> due = new ArrayList<>();
+                database.findLinksToRetry(RETRY_BATCH).stream()
+                        .filter(pending::add)
+                        .forEach(due::add);
+                if (due.isEmpty()) {
+                    retryNow = false;
+                    continue;
+                }
+                log.debug("retrying {} failed links", due.size());
+                resolveBatch(due);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("could not retry failed links", e);
+            }
+        }
+    }
+
+    private void resolveBatch(List<String> batch) {
+        Set<String> unresolved = ConcurrentHashMap.newKeySet();
+        unresolved.addAll(batch);
+        String reason = "no result from resolver";
+        try {
+            resolver.resolve(batch, (link, result) -> {
+                unresolved.remove(link);
+                offerResult(link, result);
+            });
+        } catch (RuntimeException e) {
+            log.error("could not resolve batch of " + batch.size() + " links", e);
+            reason = "resolver failed: " + e.getMessage();
+        }
+        // left without an error the refill would hand the same links back at once, this way they are retried later
+        for (String link : List.copyOf(unresolved)) {
+            if (unresolved.remove(link)) {
+                offerResult(link, ResolveResult.failed(link, reason));
+            }
+        }
+    }
+
+    // blocks the resolver while the persister is behind
+    private void offerResult(String link, ResolveResult result) {
+        try {
+            results.put(Map.entry(link, result));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.remove(link);
+        }
+    }
+
+    private void persist() {
+        while (running) {
+            try {
+                Map.Entry<String,ResolveResult> first = results.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Map.Entry<String,ResolveResult>> batch = new ArrayList<>(PERSIST_BATCH);
+                batch.add(first);
+                results.drainTo(batch, PERSIST_BATCH - 1);
+                try {
+                    Map<String,ResolveResult> resolved = new HashMap<>();
+                    batch.forEach(result -> resolved.put(result.getKey(), canonicalizer.canonicalize(result.getValue())));
+                    database.persistLinks(resolved);
+                } catch (RuntimeException e) {
+                    log.error("could not persist " + batch.size() + " resolved links", e);
+                    // the links are still stored as they were, the refill or the retry lane picks them up again
+                    refillFromDatabase = true;
+                } finally {
+                    batch.forEach(result -> pending.remove(result.getKey()));
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private List<String> nextBatch() throws InterruptedException {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        String first = queue.poll(1, TimeUnit.SECONDS);
+        if (first != null) {
+            batch.add(first);
+            queue.drainTo(batch, BATCH_SIZE - 1);
+        }
+        return batch;
+    }
+
+    // only refill once everything queued is done, so every link the database returns is one we have not seen
+    private synchronized void refill() {
+        if (!refillFromDatabase || !pending.isEmpty()) {
+            return;
+        }
+        Collection<String> links = database.findLinksToResolve();
+        log.debug("refilling resolution queue with {} links from database", links.size());
+        if (links.isEmpty()) {
+            refillFromDatabase = false;
+            return;
+        }
+        links.stream()
+                .filter(pending::add)
+                .forEach(queue::offer);
+    }
+}
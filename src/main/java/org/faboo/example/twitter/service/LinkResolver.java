@@ -0,0 +1,29 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.util.ResolveResult;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Follows the redirects of a batch of links to their final url.
+ */
+public interface LinkResolver {
+
+    /**
+     * Hands every result to the consumer as soon as the link is resolved, possibly from several threads at once.
+     * Returns when all links of the batch are resolved.
+     */
+    void resolve(Collection<String> links, BiConsumer<String,ResolveResult> consumer);
+
+    /**
+     * @return the result for every link of the batch, keyed by the link
+     */
+    default Map<String,ResolveResult> resolve(Collection<String> links) {
+        Map<String,ResolveResult> results = new ConcurrentHashMap<>();
+        resolve(links, results::put);
+        return results;
+    }
+}
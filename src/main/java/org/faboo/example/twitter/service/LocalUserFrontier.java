@@ -0,0 +1,60 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.User;
+
+import java.util.*;
+
+/**
+ * {@link UserFrontier} of a single crawler, kept in memory.
+ * A user found again on a lower depth is queued again with that depth, so it can still be expanded. The stale
+ * entry is dropped when polled.
+ */
+class LocalUserFrontier implements UserFrontier {
+
+    private final PriorityQueue<Candidate> queue = new PriorityQueue<>(
+            Comparator.comparingDouble(Candidate::getScore).reversed()
+                    .thenComparingInt(Candidate::getDepth));
+
+    // lowest depth a user was queued with, kept after polling to not visit a user twice on the same depth
+    private final Map<Long,Integer> bestDepth = new HashMap<>();
+    private final Set<Long> pending = new HashSet<>();
+
+    @Override
+    public boolean add(User user, int depth, double score) {
+        Integer known = bestDepth.get(user.getId());
+        if (known != null && known <= depth) {
+            return false;
+        }
+        bestDepth.put(user.getId(), depth);
+        pending.add(user.getId());
+        queue.add(new Candidate(user, depth, score));
+        return true;
+    }
+
+    @Override
+    public Optional<Candidate> poll() {
+        Candidate next;
+        while ((next = queue.poll()) != null) {
+            Long id = next.getUser().getId();
+            if (pending.contains(id) && bestDepth.get(id) == next.getDepth()) {
+                pending.remove(id);
+                return Optional.of(next);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void complete(Candidate candidate) {
+        // nothing to do, the candidate left the queue when polled
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    int size() {
+        return pending.size();
+    }
+}
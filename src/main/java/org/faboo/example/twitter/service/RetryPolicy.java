@@ -0,0 +1,34 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.util.RedirectResolver;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which resolution errors are worth another attempt and when.
+ * Transient errors are retried with exponential back off, after the last back off the link is a dead letter.
+ * Errors that will not go away on their own, like a 404 or a malformed url, are dead letters at once.
+ */
+final class RetryPolicy {
+
+    /**
+     * Wait before the attempt after the n-th failed one. There is one more attempt than back offs.
+     */
+    static final List<Long> BACKOFF_MINUTES = List.of(60L, 4 * 60L, 16 * 60L, 64 * 60L);
+
+    // io errors (timeouts, refused connections), unknown hosts and http status that are usually temporary
+    private static final Set<Integer> TRANSIENT = Set.of(-1, -6, 408, 425, 429, 500, 502, 503, 504, 520, 521, 522,
+            523, 524);
+
+    private RetryPolicy() {
+    }
+
+    static boolean isTransient(RedirectResolver.ResolveError error) {
+        return TRANSIENT.contains(error.getStatus());
+    }
+
+    static int getMaxAttempts() {
+        return BACKOFF_MINUTES.size() + 1;
+    }
+}
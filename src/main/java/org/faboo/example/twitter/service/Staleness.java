@@ -0,0 +1,49 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.service.twitter.Resource;
+
+import java.time.Duration;
+
+/**
+ * The parts of a user that get stale independently of each other. Each has its own scan timestamp on the User
+ * node, its own refresh interval and is refreshed using its own twitter resources.
+ */
+enum Staleness {
+
+    PROFILE("lastScanned", "refresh-profile-days", 100, Resource.USERS_LOOKUP),
+    TWEETS("tweetsLastScanned", "refresh-tweets-days", 10, Resource.TWEETS),
+    FRIENDS_FOLLOWERS("ffLastScanned", "refresh-ff-days", 5, Resource.FRIENDS, Resource.FOLLOWERS);
+
+    static final Duration DEFAULT_INTERVAL = Duration.ofDays(7);
+
+    private final String property;
+    private final String option;
+    private final int batchSize;
+    private final Resource[] resources;
+
+    Staleness(String property, String option, int batchSize, Resource... resources) {
+        this.property = property;
+        this.option = option;
+        this.batchSize = batchSize;
+        this.resources = resources;
+    }
+
+    String getProperty() {
+        return property;
+    }
+
+    String getOption() {
+        return option;
+    }
+
+    /**
+     * Number of users refreshed in one turn, before the other parts get their share of the budget.
+     */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    Resource[] getResources() {
+        return resources;
+    }
+}
@@ -0,0 +1,68 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.User;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Users waiting to be visited by the crawl. Always hands out the pending user with the highest score, so the
+ * valuable part of the graph is crawled first.
+ */
+interface UserFrontier {
+
+    /**
+     * @return true if the user was queued, false if it is already known on the same or a lower depth
+     */
+    boolean add(User user, int depth, double score);
+
+    default void addAll(Collection<Candidate> candidates) {
+        candidates.forEach(c -> add(c.getUser(), c.getDepth(), c.getScore()));
+    }
+
+    /**
+     * @return the next user to visit, empty if the crawl is finished
+     */
+    Optional<Candidate> poll();
+
+    /**
+     * Marks a user handed out by {@link #poll()} as visited.
+     */
+    void complete(Candidate candidate);
+
+    boolean isEmpty();
+
+    class Candidate {
+
+        private final User user;
+        private final int depth;
+        private final double score;
+
+        Candidate(User user, int depth, double score) {
+            this.user = user;
+            this.depth = depth;
+            this.score = score;
+        }
+
+        User getUser() {
+            return user;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return "Candidate{" +
+                    "user=" + user +
+                    ", depth=" + depth +
+                    ", score=" + score +
+                    '}';
+        }
+    }
+}
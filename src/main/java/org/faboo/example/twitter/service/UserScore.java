@@ -0,0 +1,97 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.User;
+
+/**
+ * Priority of a user waiting in the crawl frontier. Only uses data we already have, from the graph or from the pages
+ * of friends and followers just loaded, so scoring does not cost any twitter API calls.
+ */
+class UserScore {
+
+    // follower or tweet count we do not know, as opposed to a count of 0
+    static final long UNKNOWN_COUNT = -1;
+
+    private static final double FOLLOWERS_WEIGHT = 1.0;
+    private static final double TWEETS_WEIGHT = 0.5;
+    private static final double HASHTAG_OVERLAP_WEIGHT = 1.5;
+    private static final double CRAWLED_NEIGHBOURS_WEIGHT = 0.75;
+
+    static final UserScore UNKNOWN = new UserScore(UNKNOWN_COUNT, UNKNOWN_COUNT, 0, 0);
+
+    private final long followersCount;
+    private final long tweetCount;
+    private final long hashtagOverlap;
+    private final long crawledNeighbours;
+
+    UserScore(long followersCount, long tweetCount, long hashtagOverlap, long crawledNeighbours) {
+        this.followersCount = followersCount;
+        this.tweetCount = tweetCount;
+        this.hashtagOverlap = hashtagOverlap;
+        this.crawledNeighbours = crawledNeighbours;
+    }
+
+    /**
+     * @return a score with only the follower and tweet counts of the user, unknown where the user has none
+     */
+    static UserScore counts(User user) {
+        return new UserScore(
+                user.getFollowersCount() == null ? UNKNOWN_COUNT : user.getFollowersCount(),
+                user.getTweetCount() == null ? UNKNOWN_COUNT : user.getTweetCount(),
+                0, 0);
+    }
+
+    /**
+     * @return this score with the follower and tweet counts of the other one, where the other one knows them
+     */
+    UserScore withCountsOf(UserScore counts) {
+        return new UserScore(
+                counts.followersCount == UNKNOWN_COUNT ? followersCount : counts.followersCount,
+                counts.tweetCount == UNKNOWN_COUNT ? tweetCount : counts.tweetCount,
+                hashtagOverlap, crawledNeighbours);
+    }
+
+    /**
+     * Counts grow over several orders of magnitude, so they are compared on a log scale. Otherwise a single
+     * celebrity would outweigh every other signal. Users without tweets are dormant and not worth the API budget.
+     * Unknown counts add nothing, but do not make the user dormant.
+     */
+    double getScore() {
+        if (tweetCount == 0) {
+            return 0;
+        }
+        return FOLLOWERS_WEIGHT * logCount(followersCount)
+                + TWEETS_WEIGHT * logCount(tweetCount)
+                + HASHTAG_OVERLAP_WEIGHT * hashtagOverlap
+                + CRAWLED_NEIGHBOURS_WEIGHT * Math.log(1 + crawledNeighbours) / Math.log(2);
+    }
+
+    private static double logCount(long count) {
+        return count == UNKNOWN_COUNT ? 0 : Math.log10(1 + count);
+    }
+
+    long getFollowersCount() {
+        return followersCount;
+    }
+
+    long getTweetCount() {
+        return tweetCount;
+    }
+
+    long getHashtagOverlap() {
+        return hashtagOverlap;
+    }
+
+    long getCrawledNeighbours() {
+        return crawledNeighbours;
+    }
+
+    @Override
+    public String toString() {
+        return "UserScore{" +
+                "followersCount=" + followersCount +
+                ", tweetCount=" + tweetCount +
+                ", hashtagOverlap=" + hashtagOverlap +
+                ", crawledNeighbours=" + crawledNeighbours +
+                '}';
+    }
+}
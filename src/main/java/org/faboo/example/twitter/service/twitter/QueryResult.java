@@ -1,6 +1,7 @@
 package org.faboo.example.twitter.service.twitter;
 
 import org.faboo.example.twitter.data.Tweet;
+import org.faboo.example.twitter.data.UserInterner;
 
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -12,9 +13,10 @@ public class QueryResult {
     private final Long maxId;
 
     QueryResult(twitter4j.QueryResult result) {
+        UserInterner users = new UserInterner();
         this.tweets = result.getTweets()
                 .stream()
-                .map(Tweet::new)
+                .map(status -> new Tweet(status, users))
                 .collect(Collectors.toUnmodifiableSet());
         sinceId = result.getSinceId();
 
@@ -3,7 +3,7 @@ package org.faboo.example.twitter.service.twitter;
 import java.util.Arrays;
 import java.util.Optional;
 
-enum Resource {
+public enum Resource {
 
     FRIENDS("/friends/list"),
     FOLLOWERS("/followers/"),
@@ -11,12 +11,16 @@ class ResourceLimit implements Comparator<ResourceLimit> {
 
     private int requestRemaining = 1;
 
+    // requests per rate limit window
+    private final int limit;
+
     private LocalDateTime nextReset;
 
     private final Resource resource;
 
     ResourceLimit(Resource resource, RateLimitStatus rateLimit) {
         this.resource = resource;
+        limit = rateLimit.getLimit();
         requestRemaining = rateLimit.getRemaining();
         nextReset = LocalDateTime.now().plusSeconds(rateLimit.getSecondsUntilReset() + 20);
     }
@@ -47,6 +51,10 @@ class ResourceLimit implements Comparator<ResourceLimit> {
         return LocalDateTime.now().until(nextReset, ChronoUnit.SECONDS);
     }
 
+    int getLimit() {
+        return limit;
+    }
+
     public int getRequestRemaining() {
         return requestRemaining;
     }
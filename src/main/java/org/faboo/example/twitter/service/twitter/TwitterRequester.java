@@ -2,6 +2,7 @@ package org.faboo.example.twitter.service.twitter;
 
 import org.faboo.example.twitter.data.Tweet;
 import org.faboo.example.twitter.data.User;
+import org.faboo.example.twitter.data.UserInterner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import twitter4j.*;
@@ -28,23 +29,32 @@ class TwitterRequester {
         log.info("Resource limits found: {}", limits);
     }
 
+    // requesters are shared by all crawl workers of a JVM. Only one request at a time per requester, so the rate
+    // limit bookkeeping stays consistent. Waiting for the rate limit happens outside the lock, a worker waiting for
+    // one resource must not block the others.
     Set<Tweet> search(Query query) {
 
         // can not use the Wrapper here, as twitter4j.QueryResult does not fit into the hierarchy :-(
-        waitUntilUsable(Resource.SEARCH);
-
-        QueryResult queryResult;
-        try {
-            log.debug("querying for {} with {}", query.getQueryString(), this);
-            twitter4j.QueryResult result = twitter.search(query.getQuery());
-            queryResult = new QueryResult(result);
-            extractRateLimit(Resource.SEARCH, result.getRateLimitStatus());
-        } catch (TwitterException e) {
-            log.error("error requesting twitter data user:" + name, e);
-            throw new IllegalStateException(e);
-        }
-
-        return queryResult.getTweets();
+        do {
+            waitUntilUsable(Resource.SEARCH);
+            synchronized (this) {
+                if (!isUsable(Resource.SEARCH)) {
+                    // another worker used up the requests while we waited
+                    continue;
+                }
+                QueryResult queryResult;
+                try {
+                    log.debug("querying for {} with {}", query.getQueryString(), this);
+                    twitter4j.QueryResult result = twitter.search(query.getQuery());
+                    queryResult = new QueryResult(result);
+                    extractRateLimit(Resource.SEARCH, result.getRateLimitStatus());
+                } catch (TwitterException e) {
+                    log.error("error requesting twitter data user:" + name, e);
+                    throw new IllegalStateException(e);
+                }
+                return queryResult.getTweets();
+            }
+        } while (true);
     }
 
     Set<Tweet> getTweets(Collection<Long> tweetIds) throws RetryLaterException {
@@ -55,8 +65,9 @@ class TwitterRequester {
             ResponseList<Status> response = w.wrap(Resource.TWEETS, tweetIds,
                     v -> twitter.tweets().lookup(toPrimitiveArray(v)));
 
+            UserInterner users = new UserInterner();
             return response.stream()
-                    .map(Tweet::new)
+                    .map(status -> new Tweet(status, users))
                     .collect(Collectors.toUnmodifiableSet());
 
         } catch (UserNotReadableException e) {
@@ -71,7 +82,7 @@ class TwitterRequester {
         Wrapper<twitter4j.User,Long> w = new Wrapper<>();
 
         ResponseList<twitter4j.User> response = w.wrap(Resource.FRIENDS, user.getId(),
-                v -> twitter.getFollowersList(v, cursor, 200));
+                v -> twitter.getFriendsList(v, cursor, 200));
 
         return (PagableResponseList<twitter4j.User>) response;
     }
@@ -98,7 +109,24 @@ class TwitterRequester {
                 .map(User::new).findFirst().orElseThrow(UserNotReadableException::new);
     }
 
-        User lookupUser(String screenName) throws RetryLaterException, UserNotReadableException {
+    Set<User> lookupUsers(Collection<Long> userIds) throws RetryLaterException {
+
+        Wrapper<twitter4j.User,Collection<Long>> w = new Wrapper<>();
+
+        try {
+            ResponseList<twitter4j.User> response = w.wrap(Resource.USERS_LOOKUP, userIds,
+                    v -> twitter.lookupUsers(toPrimitiveArray(v)));
+
+            return response.stream()
+                    .map(User::new)
+                    .collect(Collectors.toUnmodifiableSet());
+        } catch (UserNotReadableException e) {
+            // none of the users exists anymore
+            return Collections.emptySet();
+        }
+    }
+
+    User lookupUser(String screenName) throws RetryLaterException, UserNotReadableException {
 
         Wrapper<twitter4j.User, String> w = new Wrapper<>();
         ResponseList<twitter4j.User> response = w.wrap(Resource.USERS_LOOKUP, screenName,
@@ -116,8 +144,9 @@ class TwitterRequester {
         }
         Wrapper<Status,Long> w = new Wrapper<>();
         ResponseList<Status> response = w.wrap(Resource.TWEETS, userId, v -> twitter.getUserTimeline(v, paging));
+        UserInterner users = new UserInterner();
         return response.stream()
-                .map(Tweet::new)
+                .map(status -> new Tweet(status, users))
                 .collect(Collectors.toUnmodifiableSet());
     }
 
@@ -159,32 +188,45 @@ class TwitterRequester {
         requestCount++;
     }
 
+    // must not be called while holding the lock of the requester
     private void waitUntilUsable(Resource resource) {
-        if (!isUsable(resource)) {
+        long secToWait;
+        synchronized (this) {
+            if (isUsable(resource)) {
+                return;
+            }
             ResourceLimit limit = limits.get(resource);
-            long secToWait = limit.getSecondsTillReset();
+            secToWait = limit.getSecondsTillReset();
             log.info("rate limit for requester {} reached. {}", name, limit);
-            try {
-                Thread.sleep((secToWait) * 1000);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+        }
+        try {
+            Thread.sleep(Math.max(1, secToWait) * 1000);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
         }
     }
 
-    private long[] toPrimitiveArray(Collection<Long> tweetIds) {
-        long[] ids = new long[tweetIds.size()];
+    private long[] toPrimitiveArray(Collection<Long> ids) {
+        long[] array = new long[ids.size()];
         int index = 0;
-        for (Long tweetId : tweetIds) {
-            ids[index++] = tweetId;
+        for (Long id : ids) {
+            array[index++] = id;
         }
-        return ids;
+        return array;
     }
 
     boolean isUsable(Resource resource) {
         return requestCount < 100000 && limits.get(resource).isUsable();
     }
 
+    int getRequestsPerWindow(Resource resource) {
+        return limits.get(resource).getLimit();
+    }
+
+    long getSecondsUntilUsable(Resource resource) {
+        return isUsable(resource) ? 0 : Math.max(0, limits.get(resource).getSecondsTillReset());
+    }
+
 
     @Override
     public boolean equals(Object o) {
@@ -231,7 +273,19 @@ class TwitterRequester {
 
         ResponseList<T> wrap(Resource resource, R value, CallTwitter<T,R> function)
                 throws UserNotReadableException, RetryLaterException {
-            waitUntilUsable(resource);
+            do {
+                waitUntilUsable(resource);
+                synchronized (TwitterRequester.this) {
+                    // another worker may have used up the requests while we waited
+                    if (isUsable(resource)) {
+                        return call(resource, value, function);
+                    }
+                }
+            } while (true);
+        }
+
+        private ResponseList<T> call(Resource resource, R value, CallTwitter<T,R> function)
+                throws UserNotReadableException, RetryLaterException {
             try {
                 log.debug("requesting {} for {} using {}", resource, value, TwitterRequester.this);
                 ResponseList<T> response = function.wrap(value);
@@ -13,6 +13,8 @@ import twitter4j.conf.ConfigurationBuilder;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
@@ -21,11 +23,13 @@ public class TwitterService {
     private final static Logger log = LoggerFactory.getLogger(TwitterService.class);
 
     /**
-     * maxim number of friends or followers to load. As we can only request 15 chunks of 200 users, we limit it to
-     * 15 * 200 * 4 which is about 1h.
+     * maxim number of friends or followers to load in one go. As we can only request 15 chunks of 200 users, we
+     * limit it to 15 * 200 * 4 which is about 1h. Larger lists are continued on a later call.
      */
     private static final int MAX_FF_PER_HOUR = 12000;
 
+    private static final int FF_PAGE_SIZE = 200;
+
     private final Set<TwitterRequester> requesters = new HashSet<>();
     private int maxFFToLoad;
 
@@ -39,6 +43,11 @@ public class TwitterService {
 
     }
 
+    TwitterService(Collection<TwitterRequester> requesters) {
+        this.requesters.addAll(requesters);
+        maxFFToLoad = MAX_FF_PER_HOUR * requesters.size();
+    }
+
     public void init() {
         log.info("nb. twitter accounts configured: {}", access.size());
         try {
@@ -61,33 +70,60 @@ public class TwitterService {
         maxFFToLoad = MAX_FF_PER_HOUR * requesters.size();
     }
 
-    public Set<Tweet> search(Query query) {
+    /**
+     * Hands each page of the search result to the consumer as soon as it arrives.
+     * The max id of the query is moved after each page was consumed, so a failed search can be continued by passing
+     * the same query object again. The max id is not stored, a new process starts the search with the latest tweet.
+     * @return number of tweets found
+     */
+    public int search(Query query, Consumer<Set<Tweet>> consumer) {
+
+        int count = 0;
+        Set<Tweet> page;
+        do {
+            page = getNextRequester(Resource.SEARCH).search(query);
+            if (page.size() == 0) {
+                return count;
+            }
+            consumer.accept(page);
+            count += page.size();
+            query.setMaxId(getMinId(page) - 1);
 
-        return queryAll( query);
+        } while (page.size() >= query.getCount());
+        return count;
     }
 
-    public Set<Tweet> fetchTimeline(User user, long maxId) throws UserNotReadableException {
-        Set<Tweet> tweets = new HashSet<>();
-        Set<Tweet> result;
+    /**
+     * Hands each page of the timeline to the consumer as soon as it arrives, together with the max id of the next
+     * page, 0 after the last page. A timeline that failed mid-way is continued by starting at the last max id the
+     * consumer got.
+     * @param maxId id of the newest tweet to load, -1 to start with the latest tweet
+     * @return number of tweets found
+     */
+    public int fetchTimeline(User user, long maxId, BiConsumer<Set<Tweet>,Long> consumer)
+            throws UserNotReadableException {
+
+        int count = 0;
         do {
-            result = null;
-            while (result == null) {
+            Set<Tweet> page = null;
+            while (page == null) {
                 try {
-                    result = getNextRequester(Resource.TWEETS).getUserTimeline(user.getId(), maxId);
+                    page = getNextRequester(Resource.TWEETS).getUserTimeline(user.getId(), maxId);
                 } catch (TwitterRequester.RetryLaterException e) {
                     //
                 }
             }
 
-            if (result.size() == 0) {
-                return tweets;
+            if (page.size() == 0) {
+                break;
             }
-            tweets.addAll(result);
-            maxId = getMinId(result) - 1;
+            maxId = page.size() >= 200 ? getMinId(page) - 1 : 0;
+            consumer.accept(page, maxId);
+            count += page.size();
 
-        } while (result.size() >= 200);
+        } while (maxId != 0);
         user.setTweetsLastScanned(LocalDateTime.now());
-        return tweets;
+        return count;
     }
 
     public Set<Tweet> fetchTweets(Collection<Long> ids)  {
@@ -105,12 +141,32 @@ public class TwitterService {
                 .collect(Collectors.toUnmodifiableSet());
     }
 
-    public User fillFriendsAndFollowers(User user) throws UserNotReadableException {
-
-        user = fillInFriends(user);
-        user = fillInFollowers(user);
-        user.setFfLastScanned(LocalDateTime.now());
-        return user;
+    /**
+     * Loads friends and followers page by page, continuing from the cursors checkpointed on the user.
+     * Each page is handed to the consumer together with the cursor of the next page, 0 after the last page.
+     * Stops after about an hour worth of requests per list, the rest is loaded on a later call. That call only
+     * continues the lists with an open cursor, a list completed before is not loaded again from its first page.
+     * @return true if both lists are complete
+     */
+    public boolean fillFriendsAndFollowers(User user, BiConsumer<List<User>,Long> friendsConsumer,
+                                           BiConsumer<List<User>,Long> followersConsumer)
+            throws UserNotReadableException {
+
+        // decided up front, the consumers checkpoint the cursors on the user while the lists are loaded
+        boolean continuing = user.hasOpenFollowsCursor();
+        long friendsCursor = user.getFriendsCursor();
+        long followersCursor = user.getFollowersCursor();
+        boolean complete = true;
+        if (!continuing || friendsCursor != -1) {
+            complete = loadFollows(user, Resource.FRIENDS, friendsCursor, friendsConsumer);
+        }
+        if (!continuing || followersCursor != -1) {
+            complete &= loadFollows(user, Resource.FOLLOWERS, followersCursor, followersConsumer);
+        }
+        if (complete) {
+            user.setFfLastScanned(LocalDateTime.now());
+        }
+        return complete;
     }
 
     public User lookupUser(String screenName) throws UserNotReadableException {
@@ -140,89 +196,83 @@ public class TwitterService {
         } while (true);
     }
 
-    private User fillInFollowers(User user) throws UserNotReadableException {
-
-        if (user.getFollowersCount() == null) {
-            // load first
-            user = lookupUser(user.getId());
-        }
-
-        if (user.getFollowersCount() > maxFFToLoad) {
-            // this would take over 1h, so skip
-            return user;
-        }
-        
-        long courser;
-        TwitterRequester requester;
-        PagableResponseList<twitter4j.User> response;
+    /**
+     * Looks up users in chunks of 100. Users that do not exist anymore are missing from the result.
+     */
+    public Set<User> lookupUsers(Collection<Long> userIds) {
 
-        log.info("filling in {} Followers of {}", user.getFollowersCount(), user.getScreenName());
-        courser = -1;
-        requester = getNextRequester(Resource.FOLLOWERS);
-        do {
-            response = null;
-            while (response == null) {
+        Set<User> users = new HashSet<>();
+        for (List<Long> chunk : Lists.partition(new ArrayList<>(userIds), 100)) {
+            Set<User> result = null;
+            while (result == null) {
                 try {
-                    response = requester.getFollowersOf(user, courser);
+                    result = getNextRequester(Resource.USERS_LOOKUP).lookupUsers(chunk);
                 } catch (TwitterRequester.RetryLaterException e) {
-                    requester = getNextRequester(Resource.FOLLOWERS);
+                    //
                 }
-
             }
-            user.setFollowers(response.stream().map(User::new).collect(Collectors.toList()));
-            courser = response.getNextCursor();
-            requester = getNextRequester(Resource.FOLLOWERS);
-        } while (response.hasNext());
-        return user;
+            users.addAll(result);
+        }
+        users.forEach(user -> user.setLastScanned(LocalDateTime.now()));
+        return users;
     }
 
-    private User fillInFriends(User user) throws UserNotReadableException {
+    /**
+     * @return true if requests for all given resources can be made right now
+     */
+    public boolean hasBudget(Resource... resources) {
+        return Arrays.stream(resources)
+                .allMatch(resource -> requesters.stream().anyMatch(r -> r.isUsable(resource)));
+    }
 
-        if (user.getFriendsCount() == null) {
-            // load first
-            user = lookupUser(user.getId());
-        }
-        
-        if (user.getFriendsCount() > 12000) {
-            // this would take over 1h, so skill
-            return user;
-        }
+    /**
+     * @return seconds until requests for all given resources can be made again, 0 if they can be made now
+     */
+    public long secondsUntilBudget(Resource... resources) {
+        return Arrays.stream(resources)
+                .mapToLong(resource -> requesters.stream()
+                        .mapToLong(r -> r.getSecondsUntilUsable(resource))
+                        .min().orElse(0))
+                .max().orElse(0);
+    }
 
-        log.info("filling in {} Friends of {}", user.getFriendsCount(), user.getScreenName());
-        long courser = -1;
-        TwitterRequester requester = getNextRequester(Resource.FRIENDS);
+    /**
+     * @return number of requests all tokens together can make for the resource per rate limit window
+     */
+    public int getRequestsPerWindow(Resource resource) {
+        return requesters.stream().mapToInt(r -> r.getRequestsPerWindow(resource)).sum();
+    }
+
+    private boolean loadFollows(User user, Resource resource, long cursor, BiConsumer<List<User>,Long> consumer)
+            throws UserNotReadableException {
+
+        log.info("filling in {} of {} starting at cursor {}", resource, user.getScreenName(), cursor);
+        int maxPages = Math.max(1, maxFFToLoad / FF_PAGE_SIZE);
+        int pages = 0;
+        TwitterRequester requester = getNextRequester(resource);
         PagableResponseList<twitter4j.User> response;
         do {
+            if (pages == maxPages) {
+                log.info("loaded {} pages of {} of {}, continuing later at cursor {}",
+                        pages, resource, user.getScreenName(), cursor);
+                return false;
+            }
             response = null;
             while (response == null) {
                 try {
-                    response = requester.getFriendsOf(user, courser);
+                    response = resource == Resource.FRIENDS
+                            ? requester.getFriendsOf(user, cursor)
+                            : requester.getFollowersOf(user, cursor);
                 } catch (TwitterRequester.RetryLaterException e) {
-                    requester = getNextRequester(Resource.FRIENDS);
+                    requester = getNextRequester(resource);
                 }
-
             }
-            user.setFriends(response.stream().map(User::new).collect(Collectors.toList()));
-            courser = response.getNextCursor();
-            requester = getNextRequester(Resource.FRIENDS);
-        } while (response.hasNext());
-        return user;
-    }
-
-    private Set<Tweet> queryAll(Query query) {
-
-        Set<Tweet> tweets = new HashSet<>();
-        Set<Tweet> result;
-        do {
-            result = getNextRequester(Resource.SEARCH).search(query);
-            if (result.size() == 0) {
-                return tweets;
-            }
-            tweets.addAll(result);
-            query.setMaxId(getMinId(result) - 1);
-
-        } while (result.size() >= query.getCount());
-        return tweets;
+            cursor = response.hasNext() ? response.getNextCursor() : 0;
+            consumer.accept(response.stream().map(User::new).collect(Collectors.toList()), cursor);
+            pages++;
+            requester = getNextRequester(resource);
+        } while (cursor != 0);
+        return true;
     }
 
     private long getMinId(Collection<Tweet> tweets) {
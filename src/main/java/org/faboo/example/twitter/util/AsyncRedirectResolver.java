@@ -0,0 +1,202 @@
+package org.faboo.example.twitter.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.HttpURLConnection;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.UnresolvedAddressException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Non-blocking variant of the {@link RedirectResolver}. Every hop is a completion stage of the previous one, so no
+ * thread waits for a web server.
+ */
+public class AsyncRedirectResolver {
+
+    private final static Logger log = LoggerFactory.getLogger(AsyncRedirectResolver.class);
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    // for the GET fallback we only need status and headers: cancelling the body closes the connection instead of
+    // downloading it. A HEAD response has no body, it is discarded so the connection goes back to the pool.
+    private static final HttpResponse.BodyHandler<Void> ABORT_BODY = info -> new HttpResponse.BodySubscriber<>() {
+        @Override
+        public CompletionStage<Void> getBody() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    };
+
+    private final HttpClient httpClient;
+    private final HopCache hopCache;
+    private final HostThrottle throttle;
+    private final ShortenerClassifier classifier;
+    private final ResolverTraffic traffic;
+    private final HostHealth hostHealth;
+
+    /**
+     * @param httpClient must not follow redirects itself
+     */
+    public AsyncRedirectResolver(HttpClient httpClient, HopCache hopCache, HostThrottle throttle,
+                                 ShortenerClassifier classifier, ResolverTraffic traffic, HostHealth hostHealth) {
+        this.httpClient = httpClient;
+        this.hopCache = hopCache;
+        this.throttle = throttle;
+        this.classifier = classifier;
+        this.traffic = traffic;
+        this.hostHealth = hostHealth;
+    }
+
+    /**
+     * @return a future that always completes normally, errors are reported in the result
+     */
+    public CompletableFuture<ResolveResult> resolve(String url) {
+
+        log.trace("resolving {}", url);
+        return follow(url, url, RedirectResolver.MAX_HOPS);
+    }
+
+    private CompletableFuture<ResolveResult> follow(String url, String nextUrl, int hopsRemaining) {
+
+        if (hopsRemaining == 0) {
+            return CompletableFuture.completedFuture(
+                    ResolveResult.error(url, new RedirectResolver.ResolveError(-2, "to many redirects")));
+        }
+        ResolveResult cached = hopCache.lookup(nextUrl);
+        if (cached == null && nextUrl.length() <= RedirectResolver.MAX_URL_LENGTH
+                && !classifier.needsRequest(nextUrl)) {
+            cached = ResolveResult.resolved(nextUrl);
+        }
+        CompletableFuture<ResolveResult> hop = cached != null
+                ? CompletableFuture.completedFuture(cached)
+                : resolveOnce(nextUrl, "HEAD", 1).whenComplete((result, e) -> {
+                    hopCache.record(nextUrl, result);
+                    classifier.record(nextUrl, result);
+                });
+        return hop
+                .thenCompose(result -> result.isResolved() || result.isError()
+                        ? CompletableFuture.completedFuture(result)
+                        : follow(url, result.getUrl(), hopsRemaining - 1))
+                .thenApply(result -> result.isError() ? ResolveResult.error(url, result.getError()) : result)
+                // a failing callback of a hop must not break the promise of resolve
+                .exceptionally(e -> ResolveResult.error(url, new RedirectResolver.ResolveError(-9, e.getMessage())));
+    }
+
+    private CompletableFuture<ResolveResult> resolveOnce(String urlString, String method, int attempt) {
+
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(RedirectResolver.parseToUri(urlString))
+                    .method(method, HttpRequest.BodyPublishers.noBody())
+                    .timeout(REQUEST_TIMEOUT)
+                    .build();
+        } catch (RedirectResolver.ResolveException e) {
+            return CompletableFuture.completedFuture(ResolveResult.error(urlString, e.getError()));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                    ResolveResult.error(urlString, new RedirectResolver.ResolveError(-7, e.getMessage())));
+        }
+        String host = request.uri().getHost() == null ? "" : request.uri().getHost();
+        RedirectResolver.ResolveError hostFailure = hostHealth.check(request.uri());
+        if (hostFailure != null) {
+            return CompletableFuture.completedFuture(ResolveResult.error(urlString, hostFailure));
+        }
+
+        return throttle.acquire(host)
+                .thenCompose(permit -> httpClient.sendAsync(request,
+                                "HEAD".equals(method) ? HttpResponse.BodyHandlers.discarding() : ABORT_BODY)
+                        .whenComplete((response, e) -> throttle.release(permit,
+                                response == null ? -1 : response.statusCode(),
+                                response == null ? null : response.headers().firstValue("Retry-After").orElse(null))))
+                .thenCompose(response -> {
+                    recordTraffic(method, response);
+                    hostHealth.succeeded(request.uri());
+                    int status = response.statusCode();
+                    if (RedirectResolver.shouldRetry(status, attempt, throttle.blockedFor(host))) {
+                        return resolveOnce(urlString, method, attempt + 1);
+                    }
+                    if (status == HttpURLConnection.HTTP_BAD_METHOD && "HEAD".equals(method)) {
+                        return resolveOnce(urlString, "GET", 1);
+                    }
+                    return CompletableFuture.completedFuture(toResult(urlString, status,
+                            response.headers().firstValue("Location")));
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    log.trace("error resolving " + urlString, cause);
+                    RedirectResolver.ResolveError error = new RedirectResolver.ResolveError(
+                            isUnknownHost(cause) ? -6 : -1, RedirectResolver.findRootError(cause));
+                    hostHealth.failed(request.uri(), cause, error);
+                    return ResolveResult.error(urlString, error);
+                });
+    }
+
+    private void recordTraffic(String method, HttpResponse<?> response) {
+        long headerBytes = 15;
+        for (Map.Entry<String,List<String>> header : response.headers().map().entrySet()) {
+            for (String value : header.getValue()) {
+                headerBytes += header.getKey().length() + value.length() + 4;
+            }
+        }
+        traffic.received(method, headerBytes, response.headers().firstValueAsLong("Content-Length").orElse(-1));
+    }
+
+    private ResolveResult toResult(String urlString, int status, Optional<String> location) {
+
+        if (status == HttpURLConnection.HTTP_OK) {
+            if (urlString.length() > RedirectResolver.MAX_URL_LENGTH) {
+                return ResolveResult.error(urlString,
+                        new RedirectResolver.ResolveError(-2, "url to long:" + urlString.length()));
+            }
+            return ResolveResult.resolved(urlString);
+        }
+        if (status == HttpURLConnection.HTTP_MOVED_TEMP
+                || status == HttpURLConnection.HTTP_MOVED_PERM
+                || status == HttpURLConnection.HTTP_SEE_OTHER) {
+
+            if (location.isPresent()) {
+                return ResolveResult.moved(urlString, location.get());
+            }
+            log.error("{} returns  {}, but no location", urlString, status);
+        }
+        // the java client does not report the reason phrase
+        return ResolveResult.error(urlString, new RedirectResolver.ResolveError(status, "http status " + status));
+    }
+
+    private boolean isUnknownHost(Throwable e) {
+        for (Throwable next = e; next != null; next = next.getCause()) {
+            if (next instanceof UnknownHostException || next instanceof UnresolvedAddressException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
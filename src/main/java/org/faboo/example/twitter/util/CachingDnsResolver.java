@@ -0,0 +1,41 @@
+package org.faboo.example.twitter.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches successful DNS lookups for the http client, independent of the JVM settings.
+ * Failed lookups are not cached here, the {@link HostHealth} takes care of them.
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+    private final Cache<String,InetAddress[]> addresses;
+
+    public CachingDnsResolver(Duration ttl, long maxHosts) {
+        addresses = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .maximumSize(maxHosts)
+                .build();
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        try {
+            return addresses.get(host.toLowerCase(Locale.ROOT), () -> SystemDefaultDnsResolver.INSTANCE.resolve(host));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            throw new UnknownHostException(host + ": " + e.getCause().getMessage());
+        }
+    }
+}
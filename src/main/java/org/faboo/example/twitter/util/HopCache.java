@@ -0,0 +1,142 @@
+package org.faboo.example.twitter.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers single redirect hops, so a chain can be cut short as soon as it reaches an url we have seen before.
+ * Shorteners like t.co or bit.ly and the hops behind them show up again and again.
+ * Least recently used hops are evicted once {@code maxSize} is reached, hops older than {@code ttl} are ignored.
+ * The cache is stored in a tab separated file, so it survives restarts.
+ */
+public class HopCache {
+
+    private final static Logger log = LoggerFactory.getLogger(HopCache.class);
+
+    private final Cache<String,Hop> hops;
+    private final Duration ttl;
+    private final Path store;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param store file to load from and save to, or null to keep the cache in memory only
+     */
+    public HopCache(long maxSize, Duration ttl, Path store) {
+        this.hops = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        this.ttl = ttl;
+        this.store = store;
+    }
+
+    public static HopCache disabled() {
+        return new HopCache(0, Duration.ZERO, null);
+    }
+
+    /**
+     * @return the cached result of requesting the url, or null if unknown
+     */
+    ResolveResult lookup(String url) {
+        Hop hop = hops.getIfPresent(url);
+        if (hop == null || hop.cachedAt.plus(ttl).isBefore(Instant.now())) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return hop.next == null ? ResolveResult.resolved(url) : ResolveResult.moved(url, hop.next);
+    }
+
+    /**
+     * Caches the result of requesting the url, errors are not cached.
+     */
+    void record(String url, ResolveResult result) {
+        if (result.isError()) {
+            return;
+        }
+        hops.put(url, new Hop(result.isResolved() ? null : result.getUrl(), Instant.now()));
+    }
+
+    public void load() throws IOException {
+        if (store == null || !Files.exists(store)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(store, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 3) {
+                    hops.put(fields[1], new Hop(fields[2].isEmpty() ? null : fields[2],
+                            Instant.ofEpochSecond(Long.parseLong(fields[0]))));
+                }
+            }
+        }
+        log.info("loaded {} redirect hops from {}", hops.size(), store);
+    }
+
+    public void save() throws IOException {
+        if (store == null) {
+            return;
+        }
+        Path tmp = store.resolveSibling(store.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String,Hop> entry : hops.asMap().entrySet()) {
+                Hop hop = entry.getValue();
+                String next = hop.next == null ? "" : hop.next;
+                if (isStorable(entry.getKey()) && isStorable(next)) {
+                    writer.write(hop.cachedAt.getEpochSecond() + "\t" + entry.getKey() + "\t" + next);
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(tmp, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("saved {} redirect hops to {}", hops.size(), store);
+    }
+
+    /**
+     * @return requests answered from the cache, each one saved a request
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return String.format("hop cache: %d hops, %d requests saved, %.1f%% hit rate",
+                hops.size(), hitCount, total == 0 ? 0.0 : 100.0 * hitCount / total);
+    }
+
+    private static boolean isStorable(String url) {
+        return url.indexOf('\t') < 0 && url.indexOf('\n') < 0 && url.indexOf('\r') < 0;
+    }
+
+    private static class Hop {
+        // null if the url is final
+        private final String next;
+        private final Instant cachedAt;
+
+        private Hop(String next, Instant cachedAt) {
+            this.next = next;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.faboo.example.twitter.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import javax.net.ssl.SSLException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.nio.channels.UnresolvedAddressException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers hosts that failed as a whole: unknown in DNS, refusing connections, not connecting in time or failing the
+ * TLS handshake. Once a host and port failed {@link #FAILURES_TO_FAIL_FAST} times in a row, links to it fail at once
+ * for {@code ttl}, instead of waiting for the same timeout again. Any response from the host resets its count.
+ * <p>
+ * Shorteners are never failed fast because of timeouts: they carry links to every other host, and a slow moment of
+ * t.co would otherwise fail a large part of the backlog.
+ */
+public class HostHealth {
+
+    static final int FAILURES_TO_FAIL_FAST = 3;
+
+    private final Cache<String,HostFailures> hosts;
+    private final ShortenerClassifier shorteners;
+    private final LongAdder failedFast = new LongAdder();
+
+    public HostHealth(Duration ttl, long maxHosts) {
+        this(ttl, maxHosts, ShortenerClassifier.disabled());
+    }
+
+    public HostHealth(Duration ttl, long maxHosts, ShortenerClassifier shorteners) {
+        hosts = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .maximumSize(maxHosts)
+                .build();
+        this.shorteners = shorteners;
+    }
+
+    public static HostHealth disabled() {
+        return new HostHealth(Duration.ZERO, 0);
+    }
+
+    /**
+     * @return the error of the last failure if the host failed often enough recently, null otherwise
+     */
+    RedirectResolver.ResolveError check(URI uri) {
+        HostFailures failures = hosts.getIfPresent(keyOf(uri));
+        if (failures == null || failures.count.get() < FAILURES_TO_FAIL_FAST) {
+            return null;
+        }
+        failedFast.increment();
+        return failures.error;
+    }
+
+    /**
+     * Counts the failure if the request failed because of the host, not because of the link.
+     */
+    void failed(URI uri, Throwable cause, RedirectResolver.ResolveError error) {
+        if (!isHostFailure(cause) || (isTimeout(cause) && shorteners.isShortener(hostOf(uri)))) {
+            return;
+        }
+        String key = keyOf(uri);
+        HostFailures failures = hosts.asMap().computeIfAbsent(key, k -> new HostFailures());
+        failures.error = new RedirectResolver.ResolveError(error.getStatus(),
+                "host failed recently: " + error.getMessage());
+        failures.count.incrementAndGet();
+        // writing again restarts the ttl from the latest failure
+        hosts.put(key, failures);
+    }
+
+    /**
+     * The host answered, so its failures were not in a row.
+     */
+    void succeeded(URI uri) {
+        String key = keyOf(uri);
+        if (hosts.getIfPresent(key) != null) {
+            hosts.invalidate(key);
+        }
+    }
+
+    static boolean isHostFailure(Throwable e) {
+        for (Throwable next = e; next != null; next = next.getCause()) {
+            if (next instanceof UnknownHostException || next instanceof UnresolvedAddressException
+                    || next instanceof ConnectException || isTimeout(next) || next instanceof SSLException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable next = e; next != null; next = next.getCause()) {
+            if (next instanceof ConnectTimeoutException || next instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String hostOf(URI uri) {
+        return uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+
+    // the same host may serve http and https from different machines, so each port fails on its own
+    private static String keyOf(URI uri) {
+        int port = uri.getPort();
+        if (port < 0) {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return hostOf(uri) + ":" + port;
+    }
+
+    public long getFailedFast() {
+        return failedFast.sum();
+    }
+
+    @Override
+    public String toString() {
+        long failing = hosts.asMap().values().stream()
+                .filter(failures -> failures.count.get() >= FAILURES_TO_FAIL_FAST)
+                .count();
+        return String.format("host health: %d failed hosts, %d links failed fast", failing, failedFast.sum());
+    }
+
+    private static class HostFailures {
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile RedirectResolver.ResolveError error;
+    }
+}
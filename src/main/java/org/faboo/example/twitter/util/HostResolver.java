@@ -1,34 +1,77 @@
 package org.faboo.example.twitter.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.net.InternetDomainName;
+
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Arrays;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
 
+/**
+ * Maps urls to the site they belong to: the domain right below the public suffix (eTLD+1), so
+ * {@code news.bbc.co.uk} and {@code www.bbc.co.uk} are both {@code bbc.co.uk}. Hosts without a public suffix, like
+ * ip addresses, only lose a leading {@code www.}, {@code m.} or {@code mobile.}.
+ * The sites of the last hosts are remembered, finding the public suffix is the expensive part.
+ */
 class HostResolver {
 
+    private static final String[] prefixesToDelete = {"m.", "www.", "mobile."};
 
-    private static final List<Pattern> prefixesToDelete = Arrays.asList(
-            Pattern.compile("^(m\\.).*", Pattern.CASE_INSENSITIVE),
-            Pattern.compile("^(www\\.).*", Pattern.CASE_INSENSITIVE),
-            Pattern.compile("^(mobile\\.).*", Pattern.CASE_INSENSITIVE));
+    private static final Cache<String,String> sites = CacheBuilder.newBuilder().maximumSize(10_000).build();
 
     static String getCleanedHost(String urlString) throws MalformedURLException {
 
-        URL url = new URL(urlString);
+        String host = hostOf(urlString);
+        String site = sites.getIfPresent(host);
+        if (site == null) {
+            site = siteOf(host);
+            sites.put(host, site);
+        }
+        return site;
+    }
 
-        String host = url.getHost();
+    static String siteOf(String host) {
 
-        for (Pattern pattern : prefixesToDelete) {
-            Matcher matcher = pattern.matcher(host);
-            if(matcher.find()) {
-                host = host.subSequence(matcher.group(1).length(), host.length()).toString();
+        String lowerCaseHost = host.toLowerCase(Locale.ROOT);
+        try {
+            InternetDomainName domain = InternetDomainName.from(lowerCaseHost);
+            if (domain.isUnderPublicSuffix()) {
+                return domain.topPrivateDomain().toString();
             }
+        } catch (IllegalArgumentException e) {
+            // not a valid domain name, e.g. an ip address
         }
+        for (String prefix : prefixesToDelete) {
+            if (lowerCaseHost.startsWith(prefix)) {
+                lowerCaseHost = lowerCaseHost.substring(prefix.length());
+            }
+        }
+        return lowerCaseHost;
+    }
 
-        return host;
+    // finds the host of http(s) urls without parsing the whole url, others are left to java.net.URL
+    private static String hostOf(String urlString) throws MalformedURLException {
+
+        int schemeEnd = urlString.indexOf("://");
+        if (!urlString.regionMatches(true, 0, "http", 0, 4)
+                || (schemeEnd != 4 && !(schemeEnd == 5 && Character.toLowerCase(urlString.charAt(4)) == 's'))) {
+            return new URL(urlString).getHost();
+        }
+        int start = schemeEnd + 3;
+        int end = start;
+        while (end < urlString.length() && "/?#".indexOf(urlString.charAt(end)) < 0) {
+            end++;
+        }
+        int at = urlString.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        int colon = urlString.lastIndexOf(':', end - 1);
+        if (colon >= start && urlString.lastIndexOf(']', end - 1) < colon) {
+            end = colon;
+        }
+        return urlString.substring(start, end);
     }
 
     static String buildAbsoluteUrl(String urlString, String path) throws MalformedURLException {
@@ -0,0 +1,257 @@
+package org.faboo.example.twitter.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the requests in flight per host and in total.
+ * The limit of a host adapts itself: it grows by one per round trip of fast responses and is halved on slow
+ * responses, errors and throttling (AIMD). A {@code Retry-After} of a 429 or 503 blocks the host until then.
+ * Free permits are handed to the waiting hosts in turn, so a batch full of one shortener does not starve the others.
+ * Hosts that were idle for {@link #IDLE_HOST_TTL} are forgotten, together with their limit.
+ */
+public class HostThrottle {
+
+    private final static Logger log = LoggerFactory.getLogger(HostThrottle.class);
+
+    private static final double INITIAL_HOST_LIMIT = 4;
+    static final Duration SLOW_RESPONSE = Duration.ofSeconds(3);
+    static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(10);
+    static final Duration IDLE_HOST_TTL = Duration.ofMinutes(10);
+
+    private final int maxTotal;
+    private final int maxPerHost;
+    private final double initialHostLimit;
+    private final Clock clock;
+
+    private final Map<String,HostState> hosts = new HashMap<>();
+    // hosts with waiting requests, in the order they get the next permit
+    private final Deque<HostState> waiting = new ArrayDeque<>();
+    private int inFlight;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "host-throttle");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder backedOff = new LongAdder();
+
+    public HostThrottle(int maxTotal, int maxPerHost) {
+        this(maxTotal, maxPerHost, Clock.systemUTC());
+    }
+
+    HostThrottle(int maxTotal, int maxPerHost, Clock clock) {
+        this(maxTotal, maxPerHost, Math.min(INITIAL_HOST_LIMIT, maxPerHost), clock);
+    }
+
+    private HostThrottle(int maxTotal, int maxPerHost, double initialHostLimit, Clock clock) {
+        this.maxTotal = maxTotal;
+        this.maxPerHost = maxPerHost;
+        this.initialHostLimit = initialHostLimit;
+        this.clock = clock;
+        long sweep = IDLE_HOST_TTL.toMillis();
+        timer.scheduleWithFixedDelay(() -> evictIdle(clock.instant().minus(IDLE_HOST_TTL)),
+                sweep, sweep, TimeUnit.MILLISECONDS);
+    }
+
+    public static HostThrottle unlimited() {
+        return new HostThrottle(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Clock.systemUTC());
+    }
+
+    /**
+     * @return a permit for one request to the host, once the host and the total limit allow it
+     */
+    public CompletableFuture<Permit> acquire(String host) {
+        CompletableFuture<Permit> future = new CompletableFuture<>();
+        List<Runnable> granted;
+        synchronized (this) {
+            HostState state = hosts.computeIfAbsent(host.toLowerCase(Locale.ROOT), HostState::new);
+            if (state.waiters.isEmpty()) {
+                waiting.addLast(state);
+            }
+            state.waiters.addLast(future);
+            granted = dispatch();
+        }
+        granted.forEach(Runnable::run);
+        return future;
+    }
+
+    /**
+     * Returns the permit after a response.
+     * @param status the http status, or a negative value if the request failed
+     * @param retryAfter the Retry-After header of the response, if any
+     */
+    public void release(Permit permit, int status, String retryAfter) {
+        Instant now = clock.instant();
+        Duration latency = Duration.between(permit.start, now);
+        List<Runnable> granted;
+        synchronized (this) {
+            HostState state = permit.host;
+            state.inFlight--;
+            state.lastUsed = now;
+            inFlight--;
+            if (isThrottling(status)) {
+                throttled.increment();
+                Instant until = now.plus(parseRetryAfter(retryAfter, now));
+                if (until.isAfter(state.blockedUntil)) {
+                    state.blockedUntil = until;
+                    log.debug("{} throttles us, waiting until {}", state.name, until);
+                    schedule(until);
+                }
+                state.backOff(permit, now);
+            } else if (status < 0 || latency.compareTo(SLOW_RESPONSE) > 0) {
+                state.backOff(permit, now);
+            } else {
+                state.limit = Math.min(maxPerHost, state.limit + 1 / state.limit);
+            }
+            granted = dispatch();
+        }
+        granted.forEach(Runnable::run);
+    }
+
+    /**
+     * @return how long to wait before retrying a throttled request to the host, zero if not throttled
+     */
+    public synchronized Duration blockedFor(String host) {
+        HostState state = hosts.get(host.toLowerCase(Locale.ROOT));
+        Instant now = clock.instant();
+        if (state == null || state.blockedUntil.isBefore(now)) {
+            return Duration.ZERO;
+        }
+        return Duration.between(now, state.blockedUntil);
+    }
+
+    static boolean isThrottling(int status) {
+        return status == 429 || status == 503;
+    }
+
+    static Duration parseRetryAfter(String retryAfter, Instant now) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Instant until = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return until.isAfter(now) ? Duration.between(now, until) : Duration.ZERO;
+            } catch (DateTimeParseException ignored) {
+                return DEFAULT_RETRY_AFTER;
+            }
+        }
+    }
+
+    private void schedule(Instant until) {
+        timer.schedule(this::redispatch, Duration.between(clock.instant(), until).toMillis() + 1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Forgets the hosts without waiting or running requests that were last used before {@code idleSince} and are
+     * not blocked any more.
+     */
+    synchronized void evictIdle(Instant idleSince) {
+        Instant now = clock.instant();
+        hosts.values().removeIf(state -> state.inFlight == 0 && state.waiters.isEmpty()
+                && state.lastUsed.isBefore(idleSince) && !state.blockedUntil.isAfter(now));
+    }
+
+    synchronized int hostCount() {
+        return hosts.size();
+    }
+
+    private void redispatch() {
+        List<Runnable> granted;
+        synchronized (this) {
+            granted = dispatch();
+            // the timer may fire a little early, the host would then wait forever
+            Instant now = clock.instant();
+            waiting.stream()
+                    .map(state -> state.blockedUntil)
+                    .filter(until -> until.isAfter(now))
+                    .min(Comparator.naturalOrder())
+                    .ifPresent(this::schedule);
+        }
+        granted.forEach(Runnable::run);
+    }
+
+    // called with the lock held, the futures are completed by the caller after releasing it
+    private List<Runnable> dispatch() {
+        List<Runnable> granted = new ArrayList<>();
+        Instant now = clock.instant();
+        int blocked = 0;
+        while (inFlight < maxTotal && blocked < waiting.size()) {
+            HostState state = waiting.pollFirst();
+            if (state.inFlight >= state.limit || state.blockedUntil.isAfter(now)) {
+                waiting.addLast(state);
+                blocked++;
+                continue;
+            }
+            blocked = 0;
+            CompletableFuture<Permit> future = state.waiters.pollFirst();
+            state.inFlight++;
+            inFlight++;
+            state.lastUsed = now;
+            Permit permit = new Permit(state, now);
+            granted.add(() -> future.complete(permit));
+            if (!state.waiters.isEmpty()) {
+                waiting.addLast(state);
+            }
+        }
+        return granted;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long limited = hosts.values().stream().filter(state -> state.limit < initialHostLimit).count();
+        return String.format("host throttle: %d hosts, %d below initial limit, %d throttled responses, %d back offs",
+                hosts.size(), limited, throttled.sum(), backedOff.sum());
+    }
+
+    public static class Permit {
+        private final HostState host;
+        private final Instant start;
+
+        private Permit(HostState host, Instant start) {
+            this.host = host;
+            this.start = start;
+        }
+    }
+
+    private class HostState {
+        private final String name;
+        private final Deque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+        private double limit = initialHostLimit;
+        private int inFlight;
+        private Instant blockedUntil = Instant.MIN;
+        private Instant lastBackOff = Instant.MIN;
+        private Instant lastUsed = Instant.MIN;
+
+        private HostState(String name) {
+            this.name = name;
+        }
+
+        // all requests started before the last back off saw the old limit, they must not halve it again
+        private void backOff(Permit permit, Instant now) {
+            if (permit.start.isAfter(lastBackOff)) {
+                limit = Math.max(1, limit / 2);
+                lastBackOff = now;
+                backedOff.increment();
+            }
+        }
+    }
+}
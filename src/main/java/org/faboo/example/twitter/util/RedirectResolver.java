@@ -1,5 +1,6 @@
 package org.faboo.example.twitter.util;
 
+import org.apache.http.Header;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -11,8 +12,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.*;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.time.Duration;
 
 /**
  * Resolver that follows http redirects to the end and report the final url.
@@ -23,10 +23,31 @@ public class RedirectResolver {
 
     private final CloseableHttpClient httpClient;
     private final RequestConfig requestConfig;
+    private final HopCache hopCache;
+    private final HostThrottle throttle;
+    private final ShortenerClassifier classifier;
+    private final ResolverTraffic traffic;
+    private final HostHealth hostHealth;
 
 
+    static final int MAX_HOPS = 10;
+    static final int MAX_URL_LENGTH = 1000;
+    static final int MAX_THROTTLED_ATTEMPTS = 3;
+    static final Duration MAX_RETRY_WAIT = Duration.ofMinutes(1);
+
     public RedirectResolver(CloseableHttpClient httpClient) {
+        this(httpClient, HopCache.disabled(), HostThrottle.unlimited(), ShortenerClassifier.disabled(),
+                new ResolverTraffic(), HostHealth.disabled());
+    }
+
+    public RedirectResolver(CloseableHttpClient httpClient, HopCache hopCache, HostThrottle throttle,
+                            ShortenerClassifier classifier, ResolverTraffic traffic, HostHealth hostHealth) {
         this.httpClient = httpClient;
+        this.hopCache = hopCache;
+        this.throttle = throttle;
+        this.classifier = classifier;
+        this.traffic = traffic;
+        this.hostHealth = hostHealth;
         this.requestConfig = RequestConfig.custom()
                 .setSocketTimeout(30000)
                 .setConnectTimeout(10000)
@@ -40,10 +61,18 @@ public class RedirectResolver {
         log.trace("resolving {}", url);
 
         try {
-            int hopsRemaining = 10;
+            int hopsRemaining = MAX_HOPS;
             String nextUrl = url;
             do {
-                ResolveResult resolveStatus = resolveOnce(nextUrl);
+                ResolveResult resolveStatus = hopCache.lookup(nextUrl);
+                if (resolveStatus == null && isKnownFinal(nextUrl)) {
+                    resolveStatus = ResolveResult.resolved(nextUrl);
+                }
+                if (resolveStatus == null) {
+                    resolveStatus = resolveOnce(nextUrl);
+                    hopCache.record(nextUrl, resolveStatus);
+                    classifier.record(nextUrl, resolveStatus);
+                }
                 if (resolveStatus.isResolved()) {
 
                     return resolveStatus;
@@ -60,24 +89,41 @@ public class RedirectResolver {
 
     private ResolveResult resolveOnce(String urlString) throws ResolveException {
 
-        Collection<HttpRequestBase> methods = new ArrayList<>(2);
-
-        HttpRequestBase request;
+        URI uri = parseToUri(urlString);
+        HttpRequestBase method = configure(new HttpHead(uri));
 
-        request = new HttpHead(parseToUri(urlString));
-        request.setConfig(requestConfig);
-        methods.add(request);
-
-        request = new HttpGet(parseToUri(urlString));
-        request.setConfig(requestConfig);
-        methods.add(request);
-
-        for (HttpRequestBase method : methods) {
+        String host = uri.getHost() == null ? "" : uri.getHost();
+        ResolveError hostFailure = hostHealth.check(uri);
+        if (hostFailure != null) {
+            throw new ResolveException(hostFailure);
+        }
+        int attempt = 1;
+        while (true) {
+            HostThrottle.Permit permit = throttle.acquire(host).join();
+            int status = -1;
+            String retryAfter = null;
             try (CloseableHttpResponse response = httpClient.execute(method)) {
 
-                int status = response.getStatusLine().getStatusCode();
+                status = response.getStatusLine().getStatusCode();
+                hostHealth.succeeded(uri);
+                if (response.getLastHeader("Retry-After") != null) {
+                    retryAfter = response.getLastHeader("Retry-After").getValue();
+                }
+                recordTraffic(method, response);
+                if (method instanceof HttpGet) {
+                    // we only need status and headers, closing the connection is cheaper than reading the body
+                    method.abort();
+                }
+                throttle.release(permit, status, retryAfter);
+                permit = null;
+                if (shouldRetry(status, attempt, throttle.blockedFor(host))) {
+                    attempt++;
+                    method.reset();
+                    continue;
+                }
+                attempt = 1;
                 if (status == HttpURLConnection.HTTP_OK) {
-                    if (urlString.length()>1000) {
+                    if (urlString.length() > MAX_URL_LENGTH) {
                         throw new ResolveException(new ResolveError(-2, "url to long:" + urlString.length()));
                     }
                     return ResolveResult.resolved(urlString);
@@ -92,22 +138,57 @@ public class RedirectResolver {
                     } else {
                         log.error("{} returns  {}, but no location", urlString, status);
                     }
-                } else if (status == HttpURLConnection.HTTP_BAD_METHOD) {
+                } else if (status == HttpURLConnection.HTTP_BAD_METHOD && method instanceof HttpHead) {
                     // try with get
+                    method = configure(new HttpGet(uri));
                     continue;
                 }
                 throw new ResolveException(new ResolveError(status, response.getStatusLine().getReasonPhrase()));
             } catch (UnknownHostException e) {
-                throw new ResolveException(new ResolveError(-6, findRootError(e)));
+                ResolveError error = new ResolveError(-6, findRootError(e));
+                hostHealth.failed(uri, e, error);
+                throw new ResolveException(error);
             } catch (IOException e) {
                 log.trace("error resolving " + urlString, e);
-                throw new ResolveException(new ResolveError(-1, findRootError(e)));
+                ResolveError error = new ResolveError(-1, findRootError(e));
+                hostHealth.failed(uri, e, error);
+                throw new ResolveException(error);
+            } finally {
+                if (permit != null) {
+                    throttle.release(permit, status, retryAfter);
+                }
             }
         }
-        throw new ResolveException(new ResolveError(-7, "methods exhausted"));
     }
 
-    private URI parseToUri(String urlString) throws ResolveException {
+    private HttpRequestBase configure(HttpRequestBase request) {
+        request.setConfig(requestConfig);
+        return request;
+    }
+
+    private void recordTraffic(HttpRequestBase method, CloseableHttpResponse response) {
+        long headerBytes = response.getStatusLine().toString().length() + 2;
+        Header[] headers = response.getAllHeaders();
+        for (int i = 0; headers != null && i < headers.length; i++) {
+            headerBytes += headers[i].getName().length() + headers[i].getValue().length() + 4;
+        }
+        long contentLength = response.getEntity() == null ? -1 : response.getEntity().getContentLength();
+        traffic.received(method.getMethod(), headerBytes, contentLength);
+    }
+
+    private boolean isKnownFinal(String url) {
+        return url.length() <= MAX_URL_LENGTH && !classifier.needsRequest(url);
+    }
+
+    /**
+     * @return true if a throttled request should be sent again, once the host allows it
+     */
+    static boolean shouldRetry(int status, int attempt, Duration blockedFor) {
+        return HostThrottle.isThrottling(status) && attempt < MAX_THROTTLED_ATTEMPTS
+                && blockedFor.compareTo(MAX_RETRY_WAIT) <= 0;
+    }
+
+    static URI parseToUri(String urlString) throws ResolveException {
 
         try {
             URL url = new URL(urlString);
@@ -119,16 +200,16 @@ public class RedirectResolver {
 
     }
 
-    private String findRootError(Exception e) {
+    static String findRootError(Throwable e) {
 
         String message;
         Throwable next = e;
         do {
             message = next.getMessage();
             next = next.getCause();
-        } while (message == null);
+        } while (message == null && next != null);
 
-        return message;
+        return message != null ? message : e.getClass().getSimpleName();
     }
 
     public static class ResolveException extends Exception {
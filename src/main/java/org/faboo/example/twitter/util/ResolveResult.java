@@ -30,6 +30,13 @@ public class ResolveResult {
         return new ResolveResult(false, url, null, error);
     }
 
+    /**
+     * A link the resolver gave no result for. Counted like an io error, so it is retried later.
+     */
+    public static ResolveResult failed(String url, String reason) {
+        return error(url, new RedirectResolver.ResolveError(-1, reason));
+    }
+
     private ResolveResult(boolean resolved, String url, String hostName, RedirectResolver.ResolveError error) {
         this.resolved = resolved;
         this.url = url;
@@ -0,0 +1,41 @@
+package org.faboo.example.twitter.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests of the resolvers and the bytes they received. Only status line and headers are read, the
+ * declared length of the bodies we did not download is counted as saved.
+ */
+public class ResolverTraffic {
+
+    private final LongAdder heads = new LongAdder();
+    private final LongAdder gets = new LongAdder();
+    private final LongAdder headerBytes = new LongAdder();
+    private final LongAdder skippedBodyBytes = new LongAdder();
+
+    /**
+     * @param headerBytes size of status line and headers
+     * @param contentLength declared length of the body, -1 if unknown
+     */
+    void received(String method, long headerBytes, long contentLength) {
+        ("GET".equals(method) ? gets : heads).increment();
+        this.headerBytes.add(headerBytes);
+        if ("GET".equals(method) && contentLength > 0) {
+            skippedBodyBytes.add(contentLength);
+        }
+    }
+
+    public long getHeaderBytes() {
+        return headerBytes.sum();
+    }
+
+    public long getSkippedBodyBytes() {
+        return skippedBodyBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("traffic: %d HEAD, %d GET, %d kB headers received, %d kB of bodies not downloaded",
+                heads.sum(), gets.sum(), headerBytes.sum() / 1024, skippedBodyBytes.sum() / 1024);
+    }
+}
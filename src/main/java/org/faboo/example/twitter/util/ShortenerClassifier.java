@@ -0,0 +1,136 @@
+package org.faboo.example.twitter.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether an url has to be requested to find out where it leads.
+ * Urls of known shorteners always are. Other hosts are probed a few times, once they have never redirected,
+ * their urls are taken as final without a request.
+ */
+public class ShortenerClassifier {
+
+    static final int MIN_PROBES = 5;
+
+    private final boolean enabled;
+    private final Set<String> shorteners = new HashSet<>();
+    private final Map<String,HostStats> hosts = new ConcurrentHashMap<>();
+    private final LongAdder avoided = new LongAdder();
+
+    /**
+     * @param extraShorteners domains to treat as shorteners, besides the ones from {@code shorteners.txt}
+     */
+    public ShortenerClassifier(Collection<String> extraShorteners) throws IOException {
+        try (InputStream in = ShortenerClassifier.class.getResourceAsStream("/shorteners.txt");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .forEach(this::addShortener);
+        }
+        extraShorteners.forEach(this::addShortener);
+        enabled = true;
+    }
+
+    /**
+     * Requests every url, for tests and to switch the classification off.
+     */
+    public static ShortenerClassifier disabled() {
+        return new ShortenerClassifier();
+    }
+
+    private ShortenerClassifier() {
+        enabled = false;
+    }
+
+    /**
+     * @return false if the url is known to be final, so it can be resolved without a request
+     */
+    boolean needsRequest(String url) {
+        if (!enabled) {
+            return true;
+        }
+        String host = hostOf(url);
+        if (host == null || isShortener(host)) {
+            return true;
+        }
+        HostStats stats = hosts.get(host);
+        if (stats == null || stats.redirects.sum() > 0 || stats.finals.sum() < MIN_PROBES) {
+            return true;
+        }
+        avoided.increment();
+        return false;
+    }
+
+    /**
+     * Learns from the response to a request of the url.
+     */
+    void record(String url, ResolveResult result) {
+        if (!enabled || result.isError()) {
+            return;
+        }
+        String host = hostOf(url);
+        if (host == null || isShortener(host)) {
+            return;
+        }
+        HostStats stats = hosts.computeIfAbsent(host, h -> new HostStats());
+        (result.isResolved() ? stats.finals : stats.redirects).increment();
+    }
+
+    /**
+     * @return number of urls taken as final without a request
+     */
+    public long getAvoided() {
+        return avoided.sum();
+    }
+
+    @Override
+    public String toString() {
+        long learned = hosts.values().stream()
+                .filter(stats -> stats.redirects.sum() == 0 && stats.finals.sum() >= MIN_PROBES).count();
+        return String.format("shortener classifier: %d requests avoided, %d hosts known to be final",
+                avoided.sum(), learned);
+    }
+
+    private void addShortener(String domain) {
+        shorteners.add(domain.toLowerCase(Locale.ROOT));
+    }
+
+    // a host is a shortener if it or one of its parent domains is listed
+    boolean isShortener(String host) {
+        for (String domain = host; ; domain = domain.substring(domain.indexOf('.') + 1)) {
+            if (shorteners.contains(domain)) {
+                return true;
+            }
+            if (domain.indexOf('.') < 0) {
+                return false;
+            }
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = new URL(url).getHost().toLowerCase(Locale.ROOT);
+            return host.isEmpty() ? null : host;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private static class HostStats {
+        private final LongAdder finals = new LongAdder();
+        private final LongAdder redirects = new LongAdder();
+    }
+}
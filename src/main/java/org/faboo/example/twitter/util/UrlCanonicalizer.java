@@ -0,0 +1,176 @@
+package org.faboo.example.twitter.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Brings resolved urls into one form, so the same page ends up as one (:Url) node:
+ * scheme and host in lower case, no default port, no fragment, no tracking parameters and, if configured, no
+ * trailing slash and sorted query parameters. Urls that can not be parsed are returned as they are.
+ * Results are cached, the same urls show up again and again.
+ */
+public class UrlCanonicalizer {
+
+    /**
+     * Parameters ending with '*' strip all parameters with that prefix.
+     */
+    public static final List<String> DEFAULT_TRACKING_PARAMETERS = List.of("utm_*", "fbclid", "gclid", "dclid",
+            "msclkid", "yclid", "igshid", "mc_cid", "mc_eid", "_hsenc", "_hsmi", "mkt_tok", "ref_src", "ref_url",
+            "__twitter_impression");
+
+    private final Set<String> parameters = new HashSet<>();
+    private final List<String> parameterPrefixes = new ArrayList<>();
+    private final boolean removeTrailingSlash;
+    private final boolean sortParameters;
+    private final Cache<String,String> cache;
+    private final LongAdder rewritten = new LongAdder();
+
+    public UrlCanonicalizer(Collection<String> trackingParameters, boolean removeTrailingSlash,
+                            boolean sortParameters, long cacheSize) {
+        for (String parameter : trackingParameters) {
+            String name = parameter.trim().toLowerCase(Locale.ROOT);
+            if (name.endsWith("*")) {
+                parameterPrefixes.add(name.substring(0, name.length() - 1));
+            } else if (!name.isEmpty()) {
+                parameters.add(name);
+            }
+        }
+        this.removeTrailingSlash = removeTrailingSlash;
+        this.sortParameters = sortParameters;
+        this.cache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    public static UrlCanonicalizer withDefaults() {
+        return new UrlCanonicalizer(DEFAULT_TRACKING_PARAMETERS, true, false, 100_000);
+    }
+
+    /**
+     * @return the result with its url canonicalized, errors and unresolved results unchanged
+     */
+    public ResolveResult canonicalize(ResolveResult result) {
+        if (!result.isResolved()) {
+            return result;
+        }
+        String url = canonicalize(result.getUrl());
+        if (url.equals(result.getUrl())) {
+            return result;
+        }
+        rewritten.increment();
+        return ResolveResult.resolved(url);
+    }
+
+    public String canonicalize(String url) {
+        String canonical = cache.getIfPresent(url);
+        if (canonical == null) {
+            canonical = normalize(url);
+            cache.put(url, canonical);
+        }
+        return canonical;
+    }
+
+    /**
+     * @return number of resolved urls that were changed
+     */
+    public long getRewritten() {
+        return rewritten.sum();
+    }
+
+    String normalize(String url) {
+
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd <= 0) {
+            return url;
+        }
+        String scheme = url.substring(0, schemeEnd).toLowerCase(Locale.ROOT);
+
+        int end = url.indexOf('#');
+        if (end < 0) {
+            end = url.length();
+        }
+        int queryStart = url.indexOf('?');
+        if (queryStart > end) {
+            queryStart = -1;
+        }
+        int authorityStart = schemeEnd + 3;
+        int pathStart = url.indexOf('/', authorityStart);
+        int authorityEnd = queryStart < 0 ? end : queryStart;
+        if (pathStart < 0 || pathStart > authorityEnd) {
+            pathStart = authorityEnd;
+        }
+
+        StringBuilder canonical = new StringBuilder(end);
+        canonical.append(scheme).append("://");
+        appendAuthority(canonical, scheme, url.substring(authorityStart, pathStart));
+
+        String path = url.substring(pathStart, authorityEnd);
+        if (path.isEmpty()) {
+            path = "/";
+        } else if (removeTrailingSlash) {
+            int pathEnd = path.length();
+            while (pathEnd > 1 && path.charAt(pathEnd - 1) == '/') {
+                pathEnd--;
+            }
+            path = path.substring(0, pathEnd);
+        }
+        canonical.append(path);
+
+        if (queryStart >= 0) {
+            appendQuery(canonical, url.substring(queryStart + 1, end));
+        }
+        return canonical.toString();
+    }
+
+    private void appendAuthority(StringBuilder canonical, String scheme, String authority) {
+
+        int hostStart = authority.lastIndexOf('@') + 1;
+        // the port follows the last colon, unless that colon is part of an IPv6 address
+        int portStart = authority.lastIndexOf(':');
+        if (portStart < hostStart || portStart < authority.lastIndexOf(']')) {
+            portStart = -1;
+        }
+        String host = authority.substring(hostStart, portStart < 0 ? authority.length() : portStart);
+        String port = portStart < 0 ? "" : authority.substring(portStart + 1);
+
+        canonical.append(authority, 0, hostStart).append(host.toLowerCase(Locale.ROOT));
+        boolean defaultPort = port.isEmpty()
+                || ("http".equals(scheme) && "80".equals(port))
+                || ("https".equals(scheme) && "443".equals(port));
+        if (!defaultPort) {
+            canonical.append(':').append(port);
+        }
+    }
+
+    private void appendQuery(StringBuilder canonical, String query) {
+
+        List<String> kept = new ArrayList<>();
+        for (String parameter : query.split("&")) {
+            if (!parameter.isEmpty() && !isTracking(parameter)) {
+                kept.add(parameter);
+            }
+        }
+        if (kept.isEmpty()) {
+            return;
+        }
+        if (sortParameters) {
+            Collections.sort(kept);
+        }
+        canonical.append('?').append(String.join("&", kept));
+    }
+
+    private boolean isTracking(String parameter) {
+        int nameEnd = parameter.indexOf('=');
+        String name = (nameEnd < 0 ? parameter : parameter.substring(0, nameEnd)).toLowerCase(Locale.ROOT);
+        if (parameters.contains(name)) {
+            return true;
+        }
+        for (String prefix : parameterPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -11,3 +11,19 @@ CREATE CONSTRAINT constraint_URL_URL IF NOT EXISTS ON (u:Url) ASSERT u.url IS UN
 CREATE CONSTRAINT constraint_SITE_NAME IF NOT EXISTS ON (s:Site) ASSERT s.name IS UNIQUE;
 
 CREATE INDEX index_USER_SCREENNAME IF NOT EXISTS FOR (user:User) ON (user.screenName);
+
+CREATE CONSTRAINT constraint_CRAWLLEASE_KEY IF NOT EXISTS ON (l:CrawlLease) ASSERT l.key IS UNIQUE;
+
+CREATE INDEX index_CRAWLLEASE_CRAWL IF NOT EXISTS FOR (l:CrawlLease) ON (l.crawl, l.status);
+
+CREATE INDEX index_USER_LASTSCANNED IF NOT EXISTS FOR (user:User) ON (user.lastScanned);
+
+CREATE INDEX index_USER_TWEETSLASTSCANNED IF NOT EXISTS FOR (user:User) ON (user.tweetsLastScanned);
+
+CREATE INDEX index_USER_FFLASTSCANNED IF NOT EXISTS FOR (user:User) ON (user.ffLastScanned);
+
+CREATE INDEX index_USER_FRIENDSCURSOR IF NOT EXISTS FOR (user:User) ON (user.friendsCursor);
+
+CREATE INDEX index_USER_FOLLOWERSCURSOR IF NOT EXISTS FOR (user:User) ON (user.followersCursor);
+
+CREATE INDEX index_LINK_NEXTATTEMPTAT IF NOT EXISTS FOR (l:Link) ON (l.nextAttemptAt);
@@ -0,0 +1,49 @@
+package org.faboo.example.twitter.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FollowListTest {
+
+    @Test
+    void sortsAndDeduplicatesIds() {
+
+        FollowList list = FollowList.of(new long[]{5, 1, 3, 1}, new String[]{"e", "a", "c", "a"});
+
+        assertThat(list.getIds()).containsExactly(1, 3, 5);
+        assertThat(list.getScreenName(1)).isEqualTo("c");
+        assertThat(list.contains(3)).isTrue();
+        assertThat(list.contains(4)).isFalse();
+    }
+
+    @Test
+    void combinesLists() {
+
+        FollowList a = FollowList.of(new long[]{1, 2, 4, 7}, new String[]{"a", "b", "d", "g"});
+        FollowList b = FollowList.of(new long[]{2, 3, 7, 9}, new String[]{"b", "c", "g", "i"});
+
+        assertThat(a.minus(b).getIds()).containsExactly(1, 4);
+        assertThat(b.minus(a).getIds()).containsExactly(3, 9);
+        assertThat(a.union(b).getIds()).containsExactly(1, 2, 3, 4, 7, 9);
+        assertThat(a.union(b).getScreenName(2)).isEqualTo("c");
+        assertThat(a.filter(id -> id % 2 == 0).getIds()).containsExactly(2, 4);
+        assertThat(a.minus(FollowList.EMPTY)).isEqualTo(a);
+    }
+
+    @Test
+    void buildsParametersInChunks() {
+
+        FollowList list = FollowList.of(new long[]{1, 2, 3}, new String[]{"a", null, "c"});
+
+        List<Map<String,Object>> chunk = list.toParameters(2, 4);
+
+        assertThat(list.toParameters(0, 2)).hasSize(2);
+        assertThat(chunk).hasSize(1);
+        assertThat(chunk.get(0)).containsEntry("id", 3L).containsEntry("screenName", "c");
+        assertThat(list.getUser(1).getId()).isEqualTo(2L);
+    }
+}
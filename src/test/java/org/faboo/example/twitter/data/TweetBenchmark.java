@@ -0,0 +1,70 @@
+package org.faboo.example.twitter.data;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of a tweet, once when it is read from twitter and once more with the parameters to store it.
+ * Run the main method after {@code mvn test-compile}, the gc profiler reports the bytes allocated per tweet
+ * ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TweetBenchmark {
+
+    private Status status;
+
+    @Setup
+    public void setUp() throws TwitterException {
+        String user = "{\"id\":42,\"screen_name\":\"author\",\"name\":\"An Author\",\"followers_count\":1200," +
+                "\"friends_count\":300,\"statuses_count\":5000,\"lang\":\"en\",\"description\":\"writes things\"}";
+        String quoted = "{\"id\":2,\"text\":\"the quoted tweet #Neo4j\",\"lang\":\"en\"," +
+                "\"created_at\":\"Mon Oct 19 10:00:00 +0000 2026\",\"user\":" + user + "," +
+                "\"entities\":{\"hashtags\":[{\"text\":\"Neo4j\",\"indices\":[17,23]}]}}";
+        status = TwitterObjectFactory.createStatus("{\"id\":1,\"text\":\"a tweet about #Neo4j and #Graphs " +
+                "by @someone and @other https://t.co/abc\",\"lang\":\"en\",\"favorite_count\":3," +
+                "\"retweet_count\":1,\"created_at\":\"Mon Oct 19 12:00:00 +0000 2026\",\"user\":" + user + "," +
+                "\"quoted_status\":" + quoted + "," +
+                "\"entities\":{" +
+                "\"hashtags\":[{\"text\":\"Neo4j\",\"indices\":[14,20]},{\"text\":\"Graphs\",\"indices\":[25,32]}]," +
+                "\"user_mentions\":[{\"id\":7,\"screen_name\":\"someone\",\"indices\":[36,44]}," +
+                "{\"id\":8,\"screen_name\":\"other\",\"indices\":[49,55]}]," +
+                "\"urls\":[{\"url\":\"https://t.co/abc\",\"expanded_url\":\"https://example.com/article\"," +
+                "\"indices\":[56,72]}]}}");
+    }
+
+    @Benchmark
+    public Tweet read() {
+        return new Tweet(status);
+    }
+
+    @Benchmark
+    public void readAndStore(Blackhole blackhole) {
+        Tweet tweet = new Tweet(status);
+        blackhole.consume(tweet.getProps());
+        blackhole.consume(tweet.getUser().getProps());
+        blackhole.consume(tweet.getHashtagsTags());
+        blackhole.consume(tweet.getMentionedUsers());
+        blackhole.consume(tweet.getQuotedTweet().getProps());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TweetBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
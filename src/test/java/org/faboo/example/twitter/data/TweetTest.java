@@ -0,0 +1,116 @@
+package org.faboo.example.twitter.data;
+
+import org.junit.jupiter.api.Test;
+import twitter4j.HashtagEntity;
+import twitter4j.Status;
+import twitter4j.URLEntity;
+import twitter4j.UserMentionEntity;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TweetTest {
+
+    @Test
+    void buildsPropsAndEntitiesFromStatus() {
+
+        LocalDateTime createdAt = LocalDateTime.of(2021, 3, 4, 5, 6, 7);
+        Status status = status(1);
+        when(status.getCreatedAt()).thenReturn(Date.from(createdAt.atZone(ZoneId.systemDefault()).toInstant()));
+        when(status.getText()).thenReturn("a tweet about #Neo4j and #graphs");
+        when(status.getFavoriteCount()).thenReturn(3);
+        when(status.getRetweetCount()).thenReturn(2);
+        when(status.getLang()).thenReturn("en");
+        HashtagEntity[] hashtags = {hashtag("Neo4j"), hashtag("graphs"), hashtag("neo4j")};
+        when(status.getHashtagEntities()).thenReturn(hashtags);
+        UserMentionEntity[] mentions = {mention(7, "seven"), mention(5, "five")};
+        when(status.getUserMentionEntities()).thenReturn(mentions);
+        URLEntity[] urls = {url("https://neo4j.com"), url("")};
+        when(status.getURLEntities()).thenReturn(urls);
+        when(status.getInReplyToStatusId()).thenReturn(9L);
+        when(status.getInReplyToUserId()).thenReturn(8L);
+        when(status.getInReplyToScreenName()).thenReturn("eight");
+
+        Tweet tweet = new Tweet(status);
+
+        assertThat(tweet.getId()).isEqualTo(1L);
+        assertThat(tweet.getProps()).isEqualTo(Map.of(
+                "createdAt", createdAt,
+                "text", "a tweet about #Neo4j and #graphs",
+                "isRetweet", false,
+                "favoriteCount", 3,
+                "retweetCount", 2,
+                "lang", "en"));
+        assertThat(tweet.getHashtagsTags()).containsExactly("neo4j", "graphs");
+        assertThat(tweet.getMentionedUsers()).containsExactly(
+                Map.of("id", 7L, "screenName", "seven"),
+                Map.of("id", 5L, "screenName", "five"));
+        assertThat(tweet.getUrls()).containsExactly("https://neo4j.com");
+        assertThat(tweet.getInReplyToTweetId()).isEqualTo(9L);
+        assertThat(tweet.getInReplyToUserId()).isEqualTo(8L);
+        assertThat(tweet.getInReplyToUserScreenName()).isEqualTo("eight");
+    }
+
+    @Test
+    void leavesOutMissingValues() {
+
+        Status status = status(2);
+        when(status.isRetweet()).thenReturn(true);
+
+        Tweet tweet = new Tweet(status);
+
+        assertThat(tweet.getProps()).isEqualTo(Map.of(
+                "isRetweet", true,
+                "favoriteCount", 0,
+                "retweetCount", 0));
+        assertThat(tweet.getHashtagsTags()).isEmpty();
+        assertThat(tweet.getMentionedUsers()).isEqualTo(List.of());
+        assertThat(tweet.getUrls()).isEmpty();
+        assertThat(tweet.getInReplyToTweetId()).isNull();
+        assertThat(tweet.getInReplyToUserId()).isNull();
+        assertThat(tweet.getQuotedTweet()).isNull();
+        assertThat(tweet.getRetweetedTweet()).isNull();
+    }
+
+    // a status without any values, as twitter4j reports it: no entities and -1 for missing replies
+    private static Status status(long id) {
+        twitter4j.User user = mock(twitter4j.User.class);
+        when(user.getId()).thenReturn(42L);
+        when(user.getScreenName()).thenReturn("author");
+        Status status = mock(Status.class);
+        when(status.getId()).thenReturn(id);
+        when(status.getUser()).thenReturn(user);
+        when(status.getHashtagEntities()).thenReturn(new HashtagEntity[0]);
+        when(status.getUserMentionEntities()).thenReturn(new UserMentionEntity[0]);
+        when(status.getURLEntities()).thenReturn(new URLEntity[0]);
+        when(status.getInReplyToStatusId()).thenReturn(-1L);
+        when(status.getInReplyToUserId()).thenReturn(-1L);
+        return status;
+    }
+
+    private static HashtagEntity hashtag(String text) {
+        HashtagEntity entity = mock(HashtagEntity.class);
+        when(entity.getText()).thenReturn(text);
+        return entity;
+    }
+
+    private static UserMentionEntity mention(long id, String screenName) {
+        UserMentionEntity entity = mock(UserMentionEntity.class);
+        when(entity.getId()).thenReturn(id);
+        when(entity.getScreenName()).thenReturn(screenName);
+        return entity;
+    }
+
+    private static URLEntity url(String expanded) {
+        URLEntity entity = mock(URLEntity.class);
+        when(entity.getExpandedURL()).thenReturn(expanded);
+        return entity;
+    }
+}
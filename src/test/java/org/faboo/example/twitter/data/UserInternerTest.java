@@ -0,0 +1,32 @@
+package org.faboo.example.twitter.data;
+
+import org.junit.jupiter.api.Test;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserInternerTest {
+
+    @Test
+    void sharesUsersAndKeepsNewestSnapshot() throws TwitterException {
+
+        UserInterner users = new UserInterner();
+
+        Tweet newer = tweet(1, 11, users);
+        Tweet older = tweet(2, 10, users);
+        Tweet newest = tweet(3, 12, users);
+
+        assertThat(older.getUser()).isSameAs(newer.getUser()).isSameAs(newest.getUser());
+        assertThat(newest.getUser().getTweetCount()).isEqualTo(12);
+        assertThat(users.size()).isEqualTo(1);
+    }
+
+    private static Tweet tweet(long id, int tweetCount, UserInterner users) throws TwitterException {
+        return new Tweet(TwitterObjectFactory.createStatus("{" +
+                "\"id\":" + id + "," +
+                "\"text\":\"tweet " + id + "\"," +
+                "\"user\":{\"id\":42,\"screen_name\":\"author\",\"statuses_count\":" + tweetCount + "}" +
+                "}"), users);
+    }
+}
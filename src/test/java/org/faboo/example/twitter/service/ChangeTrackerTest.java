@@ -0,0 +1,35 @@
+package org.faboo.example.twitter.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChangeTrackerTest {
+
+    private final ChangeTracker tracker = new ChangeTracker("user", 10);
+
+    @Test
+    void writesOnlyChangedProperties() {
+
+        Map<String,Object> props = Map.of("id", 1L, "name", "a", "tweetCount", 10L);
+        assertThat(tracker.changes(1, props)).isEqualTo(props);
+        tracker.written(1, props);
+
+        assertThat(tracker.changes(1, props)).isEmpty();
+        assertThat(tracker.changes(1, Map.of("id", 1L, "name", "a", "tweetCount", 11L)))
+                .containsExactly(Map.entry("tweetCount", 11L));
+        assertThat(tracker).hasToString("user writes avoided: 1 of 3 (33.3%)");
+    }
+
+    @Test
+    void writesForgottenNodesInFull() {
+
+        Map<String,Object> props = Map.of("id", 1L, "name", "a");
+        tracker.written(1, props);
+        tracker.forget(1);
+
+        assertThat(tracker.changes(1, props)).isEqualTo(props);
+    }
+}
@@ -0,0 +1,71 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.Tweet;
+import org.faboo.example.twitter.service.twitter.TwitterService;
+import org.junit.jupiter.api.Test;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ConversationHydratorTest {
+
+    private final TwitterService twitterService = mock(TwitterService.class);
+    private final Database database = mock(Database.class);
+
+    @Test
+    void followsReplyChainUpToMaxDepth() throws TwitterException {
+
+        when(database.findMissingTweetsById(any())).thenAnswer(i -> i.getArgument(0));
+        when(twitterService.fetchTweets(Set.of(2L))).thenReturn(Set.of(tweet(2, 3L)));
+        when(twitterService.fetchTweets(Set.of(3L))).thenReturn(Set.of(tweet(3, 4L)));
+
+        ConversationHydrator hydrator = new ConversationHydrator(twitterService, database);
+        hydrator.setMaxChainDepth(2);
+        Set<Tweet> fetched = hydrator.hydrate(Set.of(tweet(1, 2L)));
+
+        assertThat(fetched).extracting(Tweet::getId).containsExactlyInAnyOrder(2L, 3L);
+        verify(twitterService, never()).fetchTweets(Set.of(4L));
+    }
+
+    @Test
+    void skipsTweetsInBatchAndInDatabase() throws TwitterException {
+
+        when(database.findMissingTweetsById(Set.of(3L))).thenReturn(Collections.emptySet());
+        when(twitterService.fetchTweets(any())).thenReturn(Collections.emptySet());
+
+        ConversationHydrator hydrator = new ConversationHydrator(twitterService, database);
+        Set<Tweet> fetched = hydrator.hydrate(Set.of(tweet(1, 2L), tweet(2, 3L)));
+
+        assertThat(fetched).isEmpty();
+        verify(database).findMissingTweetsById(Set.of(3L));
+    }
+
+    @Test
+    void doesNotRequestMissingTweetsTwice() throws TwitterException {
+
+        when(database.findMissingTweetsById(any())).thenAnswer(i -> i.getArgument(0));
+        when(twitterService.fetchTweets(any())).thenReturn(Collections.emptySet());
+
+        ConversationHydrator hydrator = new ConversationHydrator(twitterService, database);
+        hydrator.hydrate(Set.of(tweet(1, 2L)));
+        hydrator.hydrate(Set.of(tweet(5, 2L)));
+
+        verify(twitterService, times(1)).fetchTweets(Set.of(2L));
+        verifyNoMoreInteractions(twitterService);
+    }
+
+    private Tweet tweet(long id, Long inReplyTo) throws TwitterException {
+        return new Tweet(TwitterObjectFactory.createStatus("{" +
+                "\"id\":" + id + "," +
+                "\"text\":\"tweet " + id + "\"," +
+                "\"in_reply_to_status_id\":" + (inReplyTo == null ? -1 : inReplyTo) + "," +
+                "\"user\":{\"id\":42,\"screen_name\":\"author\"}" +
+                "}"));
+    }
+}
@@ -0,0 +1,87 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.User;
+import org.faboo.example.twitter.service.twitter.Resource;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CrawlPlannerTest {
+
+    private final Map<Staleness,Double> allStale = Map.of(
+            Staleness.PROFILE, 1.0, Staleness.TWEETS, 1.0, Staleness.FRIENDS_FOLLOWERS, 1.0);
+
+    private final Map<Resource,Integer> perWindow = Map.of(
+            Resource.USERS_LOOKUP, 900, Resource.TWEETS, 900, Resource.FRIENDS, 15, Resource.FOLLOWERS, 15);
+
+    @Test
+    void depthZeroVisitsSeedAndNeighbours() {
+
+        User seed = user(1, 300, 100, 50);
+        CrawlPlan plan = CrawlPlanner.estimate(seed, Collections.emptyList(), 1.0, 0, allStale, perWindow);
+
+        assertThat(plan.getLevels()).isEqualTo(2);
+        assertThat(plan.getUsersOnLevel(1)).isEqualTo(400);
+        assertThat(plan.getRequests().get(Resource.FOLLOWERS)).isEqualTo(2);
+        assertThat(plan.getRequests().get(Resource.FRIENDS)).isEqualTo(1);
+        // seed needs 1 page of tweets, every neighbour as well
+        assertThat(plan.getRequests().get(Resource.TWEETS)).isEqualTo(401);
+    }
+
+    @Test
+    void deeperLevelsUseSampleAndNovelty() {
+
+        User seed = user(1, 10, 0, 10);
+        List<User> sample = List.of(user(2, 100, 100, 10), user(3, 0, 0, 10));
+        CrawlPlan plan = CrawlPlanner.estimate(seed, sample, 0.5, 1, allStale, perWindow);
+
+        // mean degree 100, half of them new
+        assertThat(plan.getUsersOnLevel(2)).isEqualTo(10 * 100 / 2);
+    }
+
+    @Test
+    void countsAllPagesOfLargeAccounts() {
+
+        User seed = user(1, 20000, 10, 10);
+        CrawlPlan plan = CrawlPlanner.estimate(seed, Collections.emptyList(), 1.0, 0, allStale, perWindow);
+
+        assertThat(plan.getUsersOnLevel(1)).isEqualTo(20010);
+        assertThat(plan.getRequests().get(Resource.FOLLOWERS)).isEqualTo(100);
+    }
+
+    @Test
+    void freshUsersCostNothing() {
+
+        Map<Staleness,Double> noneStale = Map.of(
+                Staleness.PROFILE, 0.0, Staleness.TWEETS, 0.0, Staleness.FRIENDS_FOLLOWERS, 0.0);
+        CrawlPlan plan = CrawlPlanner.estimate(user(1, 300, 100, 50), Collections.emptyList(), 1.0, 2,
+                noneStale, perWindow);
+
+        assertThat(plan.getRequests().values()).containsOnly(0L);
+        assertThat(plan.getWallClockTime()).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void slowestResourceBoundsWallClock() {
+
+        User seed = user(1, 200 * 31, 0, 0);
+        CrawlPlan plan = CrawlPlanner.estimate(seed, Collections.emptyList(), 1.0, 0, allStale, perWindow);
+
+        // 31 follower pages at 15 per window
+        assertThat(plan.getDuration(Resource.FOLLOWERS)).isEqualTo(Duration.ofMinutes(30));
+        assertThat(plan.getWallClockTime()).isGreaterThanOrEqualTo(Duration.ofMinutes(30));
+    }
+
+    private User user(long id, long followers, long friends, long tweets) {
+        Map<String,Object> props = new HashMap<>();
+        props.put("id", id);
+        props.put("screenName", "user" + id);
+        props.put("followersCount", followers);
+        props.put("friendsCount", friends);
+        props.put("tweetCount", tweets);
+        return new User(props);
+    }
+}
@@ -0,0 +1,252 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.Tweet;
+import org.faboo.example.twitter.data.User;
+import org.faboo.example.twitter.util.ResolveResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.neo4j.driver.Values.parameters;
+
+class DatabaseTest {
+
+    private static final String LINK = "http://t.co/a";
+
+    private final Database database = new Database(EmbeddedNeo4j.driver());
+
+    @BeforeEach
+    void clear() {
+        EmbeddedNeo4j.clear();
+    }
+
+    @Test
+    void findsLinksResolvedBefore() {
+
+        try (Session session = EmbeddedNeo4j.driver().session()) {
+            session.run("create (:Link {url:'http://t.co/resolved'})-[:LINKS_TO]->(:Url {url:'https://a.com'}), " +
+                    " (:Link {url:'http://t.co/failed', errorCode:-1})").consume();
+        }
+
+        assertThat(database.findSettledLinks(List.of("http://t.co/resolved", "http://t.co/failed", "http://t.co/new")))
+                .containsExactly("http://t.co/resolved");
+    }
+
+    @Test
+    void backsOffAfterTransientError() {
+
+        database.persistLinks(Map.of(LINK, error(503)));
+
+        Record link = link();
+        assertThat(link.get("attempts").asInt()).isEqualTo(1);
+        assertThat(link.get("nextAttemptAt").asZonedDateTime())
+                .isCloseTo(ZonedDateTime.now().plusMinutes(RetryPolicy.BACKOFF_MINUTES.get(0)),
+                        within(1, ChronoUnit.MINUTES));
+        assertThat(link.get("deadLetter").isNull()).isTrue();
+        assertThat(database.findLinksToRetry(10)).isEmpty();
+        assertThat(database.findSettledLinks(List.of(LINK))).containsExactly(LINK);
+    }
+
+    @Test
+    void retriesOnceDue() {
+
+        database.persistLinks(Map.of(LINK, error(-1)));
+        moveNextAttempt(Duration.ofMinutes(-1));
+
+        assertThat(database.findLinksToRetry(10)).containsExactly(LINK);
+        assertThat(database.findSettledLinks(List.of(LINK))).isEmpty();
+    }
+
+    @Test
+    void backOffGrowsWithEachAttempt() {
+
+        database.persistLinks(Map.of(LINK, error(-1)));
+        database.persistLinks(Map.of(LINK, error(-1)));
+
+        Record link = link();
+        assertThat(link.get("attempts").asInt()).isEqualTo(2);
+        assertThat(link.get("nextAttemptAt").asZonedDateTime())
+                .isAfter(ZonedDateTime.now().plusMinutes(RetryPolicy.BACKOFF_MINUTES.get(1) - 1));
+    }
+
+    @Test
+    void givesUpAfterLastAttempt() {
+
+        for (int i = 0; i < RetryPolicy.getMaxAttempts(); i++) {
+            assertThat(link().get("deadLetter").isNull()).isTrue();
+            database.persistLinks(Map.of(LINK, error(-1)));
+        }
+
+        Record link = link();
+        assertThat(link.get("attempts").asInt()).isEqualTo(RetryPolicy.getMaxAttempts());
+        assertThat(link.get("deadLetter").asBoolean()).isTrue();
+        assertThat(link.get("nextAttemptAt").isNull()).isTrue();
+        assertThat(database.findSettledLinks(List.of(LINK))).containsExactly(LINK);
+    }
+
+    @Test
+    void givesUpAtOnceOnPermanentError() {
+
+        database.persistLinks(Map.of(LINK, error(404)));
+
+        Record link = link();
+        assertThat(link.get("deadLetter").asBoolean()).isTrue();
+        assertThat(link.get("nextAttemptAt").isNull()).isTrue();
+    }
+
+    @Test
+    void successClearsRetryState() {
+
+        database.persistLinks(Map.of(LINK, error(503)));
+        ResolveResult resolved = mock(ResolveResult.class);
+        when(resolved.getUrl()).thenReturn("https://example.com/a");
+        when(resolved.getHostName()).thenReturn("example.com");
+        database.persistLinks(Map.of(LINK, resolved));
+
+        Record link = link();
+        assertThat(link.get("attempts").isNull()).isTrue();
+        assertThat(link.get("nextAttemptAt").isNull()).isTrue();
+        assertThat(link.get("errorCode").isNull()).isTrue();
+        assertThat(database.findSettledLinks(List.of(LINK))).containsExactly(LINK);
+    }
+
+    @Test
+    void migratesFailuresOfEarlierVersionsOnce() {
+
+        try (Session session = EmbeddedNeo4j.driver().session()) {
+            session.run("create (:Link {url:$url, errorCode:-1, errorMessage:'timeout'})", parameters("url", LINK))
+                    .consume();
+        }
+
+        assertThat(database.migrateUncountedFailures()).isEqualTo(1);
+        assertThat(database.migrateUncountedFailures()).isZero();
+        assertThat(database.findLinksToRetry(10)).containsExactly(LINK);
+
+        database.persistLinks(Map.of(LINK, error(-1)));
+        assertThat(link().get("attempts").asInt()).isEqualTo(1);
+    }
+
+    @Test
+    void checkpointsTimelineCursor() {
+
+        User user = new User(Map.of("id", 1L, "screenName", "a"));
+        database.persistUsers(List.of(user));
+
+        database.persistTimelineCursor(user, 999);
+        assertThat(database.getUser(user).orElseThrow().getTimelineCursor()).isEqualTo(999);
+
+        database.persistTimelineCursor(user, 0);
+        assertThat(database.getUser(user).orElseThrow().hasOpenTimelineCursor()).isFalse();
+    }
+
+    @Test
+    void scoresStoredUsersWithoutCountsAsUnknown() {
+
+        database.persistUsers(List.of(new User(Map.of("id", 1L, "screenName", "a")),
+                new User(Map.of("id", 2L, "screenName", "b", "followersCount", 10L, "tweetCount", 0L))));
+
+        Map<Long,UserScore> scores = database.scoreUsers(List.of(1L, 2L, 3L), List.of("neo4j"));
+
+        assertThat(scores).containsOnlyKeys(1L, 2L);
+        assertThat(scores.get(1L).getFollowersCount()).isEqualTo(UserScore.UNKNOWN_COUNT);
+        assertThat(scores.get(1L).getTweetCount()).isEqualTo(UserScore.UNKNOWN_COUNT);
+        assertThat(scores.get(2L).getFollowersCount()).isEqualTo(10);
+        assertThat(scores.get(2L).getTweetCount()).isZero();
+    }
+
+    @Test
+    void staleUsersAreNotFoundAgainOnceRescanned() {
+
+        LocalDateTime weekAgo = LocalDateTime.now().minusDays(8);
+        User stale = new User(Map.of("id", 1L, "screenName", "a"));
+        stale.setTweetsLastScanned(weekAgo);
+        User fresh = new User(Map.of("id", 2L, "screenName", "b"));
+        fresh.setTweetsLastScanned(LocalDateTime.now());
+        database.persistUsers(List.of(stale, fresh));
+        LocalDateTime cutoff = LocalDateTime.now().minus(Staleness.DEFAULT_INTERVAL);
+
+        assertThat(database.findStaleUsers(Staleness.TWEETS, cutoff, 10)).extracting(User::getId).containsExactly(1L);
+        assertThat(database.findOldestScan(Staleness.TWEETS)).contains(weekAgo);
+
+        // refreshed, even if the timeline had no tweets
+        stale.setTweetsLastScanned(LocalDateTime.now());
+        database.persistUsers(List.of(stale));
+
+        assertThat(database.findStaleUsers(Staleness.TWEETS, cutoff, 10)).isEmpty();
+    }
+
+    @Test
+    void loadsCooccurringHashtagsWithTheTagsTheyWereUsedWith() {
+
+        try (Session session = EmbeddedNeo4j.driver().session()) {
+            session.run("create (neo4j:Hashtag {name:'neo4j'}), (cypher:Hashtag {name:'cypher'}), " +
+                    " (graph:Hashtag {name:'graph', lastScanned:datetime()}), " +
+                    " (neo4j)-[:TAGS]->(:Tweet {id:1})<-[:TAGS]-(graph), " +
+                    " (cypher)-[:TAGS]->(:Tweet {id:2})<-[:TAGS]-(graph), " +
+                    " (neo4j)-[:TAGS]->(:Tweet {id:3})<-[:TAGS]-(graph)").consume();
+        }
+
+        List<Map<String,Object>> rows = database.getCooccurringHashtags(List.of("neo4j", "cypher"));
+
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0)).containsEntry("hashtag", "graph")
+                .containsEntry("weight", 3L)
+                .containsEntry("scanned", true);
+        assertThat(rows.get(0).get("via")).asList().containsExactlyInAnyOrder("neo4j", "cypher");
+    }
+
+    @Test
+    void reportsTweetsWhoseHashtagsAreStoredForTheFirstTime() throws TwitterException {
+
+        Tweet tagged = tweet(1, "{\"text\":\"neo4j\",\"indices\":[0,6]}");
+        Tweet untagged = tweet(2, "");
+
+        assertThat(database.persistTweets(List.of(tagged, untagged))).containsExactly(1L);
+        assertThat(database.persistTweets(List.of(tagged, untagged))).isEmpty();
+    }
+
+    private static Tweet tweet(long id, String hashtags) throws TwitterException {
+        return new Tweet(TwitterObjectFactory.createStatus("{" +
+                "\"id\":" + id + "," +
+                "\"text\":\"tweet " + id + "\"," +
+                "\"entities\":{\"hashtags\":[" + hashtags + "]}," +
+                "\"user\":{\"id\":42,\"screen_name\":\"author\"}" +
+                "}"));
+    }
+
+    private Record link() {
+        try (Session session = EmbeddedNeo4j.driver().session()) {
+            return session.run("optional match (l:Link {url:$url}) return l.attempts as attempts, " +
+                            " l.nextAttemptAt as nextAttemptAt, l.deadLetter as deadLetter, l.errorCode as errorCode",
+                    parameters("url", LINK)).single();
+        }
+    }
+
+    private void moveNextAttempt(Duration fromNow) {
+        try (Session session = EmbeddedNeo4j.driver().session()) {
+            session.run("match (l:Link {url:$url}) set l.nextAttemptAt = datetime() + duration({seconds:$seconds})",
+                    parameters("url", LINK, "seconds", fromNow.toSeconds())).consume();
+        }
+    }
+
+    private static ResolveResult error(int status) {
+        ResolveResult result = mock(ResolveResult.class);
+        when(result.isError()).thenReturn(true);
+        when(result.getError()).thenAnswer(i -> RetryPolicyTest.error(status));
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package org.faboo.example.twitter.service;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.neo4j.driver.Session;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An embedded Neo4j with the schema of the application, started once and shared by all database tests of a run.
+ */
+final class EmbeddedNeo4j {
+
+    private static Driver driver;
+
+    private EmbeddedNeo4j() {
+    }
+
+    static synchronized Driver driver() {
+        if (driver == null) {
+            Neo4j neo4j = Neo4jBuilders.newInProcessBuilder().withDisabledServer().build();
+            driver = GraphDatabase.driver(neo4j.boltURI());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                driver.close();
+                neo4j.close();
+            }));
+            createSchema();
+        }
+        return driver;
+    }
+
+    /**
+     * Deletes all nodes, the schema stays.
+     */
+    static void clear() {
+        try (Session session = driver().session()) {
+            session.run("match (n) detach delete n").consume();
+        }
+    }
+
+    private static void createSchema() {
+        try (InputStream in = EmbeddedNeo4j.class.getResourceAsStream("/schema.cypher");
+             Session session = driver.session()) {
+            for (String statement : new String(in.readAllBytes(), StandardCharsets.UTF_8).split(";")) {
+                if (!statement.isBlank()) {
+                    session.run(statement).consume();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
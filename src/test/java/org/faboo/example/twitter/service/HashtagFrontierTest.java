@@ -0,0 +1,154 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.Tweet;
+import org.junit.jupiter.api.Test;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HashtagFrontierTest {
+
+    @Test
+    void startsWithStartTag() {
+
+        HashtagFrontier frontier = new HashtagFrontier("neo4j", 2);
+
+        assertThat(frontier.next()).contains("neo4j");
+    }
+
+    @Test
+    void prefersCloserThenHeavierTags() throws TwitterException {
+
+        HashtagFrontier frontier = new HashtagFrontier("neo4j", 2);
+        frontier.markScanned("neo4j");
+        update(frontier, List.of(
+                tweet(1, "neo4j", "graph"),
+                tweet(2, "neo4j", "cypher"),
+                tweet(3, "neo4j", "cypher"),
+                tweet(4, "cypher", "database")));
+
+        assertThat(frontier.next()).contains("cypher");
+        frontier.markScanned("cypher");
+        assertThat(frontier.next()).contains("graph");
+        frontier.markScanned("graph");
+        assertThat(frontier.next()).contains("database");
+    }
+
+    @Test
+    void ignoresTagsBeyondMaxDistance() throws TwitterException {
+
+        HashtagFrontier frontier = new HashtagFrontier("neo4j", 1);
+        frontier.markScanned("neo4j");
+        update(frontier, List.of(
+                tweet(1, "neo4j", "cypher"),
+                tweet(2, "cypher", "database")));
+        frontier.markScanned("cypher");
+
+        assertThat(frontier.next()).isEmpty();
+    }
+
+    @Test
+    void ignoresUnconnectedTweets() throws TwitterException {
+
+        HashtagFrontier frontier = new HashtagFrontier("neo4j", 3);
+        frontier.markScanned("neo4j");
+        update(frontier, List.of(tweet(1, "cats", "dogs")));
+
+        assertThat(frontier.next()).isEmpty();
+    }
+
+    @Test
+    void warmStartedTagsKeepScannedState() {
+
+        HashtagFrontier frontier = new HashtagFrontier("neo4j", 2);
+        frontier.markScanned("neo4j");
+        frontier.add("cypher", 1, 100, true);
+        frontier.add("graph", 1, 5, false);
+
+        assertThat(frontier.next()).contains("graph");
+    }
+
+    @Test
+    void closerTagBringsItsNeighboursCloser() throws TwitterException {
+
+        HashtagFrontier frontier = new HashtagFrontier("neo4j", 2);
+        update(frontier, List.of(
+                tweet(1, "neo4j", "cypher"),
+                tweet(2, "cypher", "graph"),
+                tweet(3, "graph", "nodes")));
+        List.of("neo4j", "cypher", "graph").forEach(frontier::markScanned);
+        assertThat(frontier.next()).isEmpty();
+
+        update(frontier, List.of(tweet(4, "neo4j", "graph")));
+
+        assertThat(frontier.next()).contains("nodes");
+    }
+
+    @Test
+    void warmStartedTagBringsItsNeighboursCloser() throws TwitterException {
+
+        Database database = mock(Database.class);
+        when(database.isHashtagScanned("neo4j")).thenReturn(true);
+        when(database.getCooccurringHashtags(anyCollection())).thenReturn(
+                List.of(row("cypher", 10, true, "neo4j")),
+                List.of(row("neo4j", 10, true, "cypher"), row("graph", 10, true, "cypher"),
+                        row("heavy", 100, false, "cypher")),
+                List.of(row("cypher", 10, true, "graph"), row("nodes", 200, false, "graph")));
+        HashtagFrontier frontier = new HashtagFrontier("neo4j", 3);
+        frontier.warmStart(database);
+        assertThat(frontier.next()).contains("heavy");
+
+        update(frontier, List.of(tweet(1, "neo4j", "graph")));
+
+        assertThat(frontier.next()).contains("nodes");
+    }
+
+    @Test
+    void countsTweetStoredAgainOnlyOnce() throws TwitterException {
+
+        Database database = mock(Database.class);
+        when(database.isHashtagScanned("neo4j")).thenReturn(true);
+        when(database.getCooccurringHashtags(anyCollection())).thenReturn(
+                List.of(row("cypher", 5, false, "neo4j")),
+                List.of());
+        HashtagFrontier frontier = new HashtagFrontier("neo4j", 1);
+        frontier.warmStart(database);
+
+        // the first persist stores the hashtags, the second finds them
+        frontier.update(List.of(tweet(11, "neo4j", "cypher")), Set.of(11L));
+        frontier.update(List.of(tweet(11, "neo4j", "cypher")), Set.of());
+
+        assertThat(frontier.getWeight("cypher")).isEqualTo(6);
+    }
+
+    private static Map<String,Object> row(String tag, long weight, boolean scanned, String... via) {
+        return Map.of("hashtag", tag, "weight", weight, "scanned", scanned, "via", List.of(via));
+    }
+
+    // every tweet is stored for the first time
+    private static void update(HashtagFrontier frontier, List<Tweet> tweets) {
+        frontier.update(tweets, tweets.stream().map(Tweet::getId).collect(Collectors.toSet()));
+    }
+
+    private Tweet tweet(long id, String... tags) throws TwitterException {
+        String hashtags = Arrays.stream(tags)
+                .map(tag -> "{\"text\":\"" + tag + "\",\"indices\":[0,1]}")
+                .collect(Collectors.joining(","));
+        return new Tweet(TwitterObjectFactory.createStatus("{" +
+                "\"id\":" + id + "," +
+                "\"text\":\"tweet " + id + "\"," +
+                "\"entities\":{\"hashtags\":[" + hashtags + "]}," +
+                "\"user\":{\"id\":42,\"screen_name\":\"author\"}" +
+                "}"));
+    }
+}
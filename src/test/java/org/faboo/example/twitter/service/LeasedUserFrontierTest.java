@@ -0,0 +1,112 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeasedUserFrontierTest {
+
+    private static final String CRAWL = "test";
+
+    private final Database database = new Database(EmbeddedNeo4j.driver());
+
+    @BeforeEach
+    void clear() {
+        EmbeddedNeo4j.clear();
+    }
+
+    @Test
+    void crawlersClaimDifferentUsersBestFirst() {
+
+        try (LeasedUserFrontier first = frontier("a", Duration.ofMinutes(5));
+             LeasedUserFrontier second = frontier("b", Duration.ofMinutes(5))) {
+            first.addAll(List.of(candidate(1, 1.0), candidate(2, 3.0), candidate(3, 2.0)));
+
+            assertThat(first.poll()).map(this::id).contains(2L);
+            assertThat(second.poll()).map(this::id).contains(3L);
+            assertThat(first.poll()).map(this::id).contains(1L);
+            assertThat(claim("c", Duration.ofMinutes(5))).isEmpty();
+        }
+    }
+
+    @Test
+    void completedUsersAreNotClaimedAgain() {
+
+        try (LeasedUserFrontier frontier = frontier("a", Duration.ofMinutes(5))) {
+            frontier.add(user(1), 1, 1.0);
+            UserFrontier.Candidate claimed = frontier.poll().orElseThrow();
+            assertThat(frontier.isEmpty()).isFalse();
+
+            frontier.complete(claimed);
+
+            assertThat(frontier.isEmpty()).isTrue();
+            assertThat(frontier.poll()).isEmpty();
+            // offered again on the same depth, as when a finished crawl is started again
+            frontier.add(user(1), 1, 1.0);
+            assertThat(frontier.isEmpty()).isTrue();
+            // found closer to the start, its neighbours are within reach again
+            frontier.add(user(1), 0, 1.0);
+            assertThat(frontier.poll()).map(this::id).contains(1L);
+        }
+    }
+
+    @Test
+    void expiredLeaseIsTakenOver() throws InterruptedException {
+
+        database.offerLeases(CRAWL, List.of(candidate(1, 1.0)));
+        // a crawler that claimed the user and died, without a heartbeat
+        assertThat(claim("dead", Duration.ofMillis(100))).isPresent();
+        assertThat(claim("b", Duration.ofMinutes(5))).isEmpty();
+
+        Thread.sleep(200);
+
+        try (LeasedUserFrontier frontier = frontier("b", Duration.ofMinutes(5))) {
+            UserFrontier.Candidate claimed = frontier.poll().orElseThrow();
+            assertThat(claimed.getUser().getId()).isEqualTo(1L);
+            assertThat(database.completeLease(CRAWL, "dead", 1L)).isFalse();
+
+            frontier.complete(claimed);
+            assertThat(frontier.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    void heartbeatKeepsLeaseAlive() throws InterruptedException {
+
+        try (LeasedUserFrontier frontier = frontier("a", Duration.ofSeconds(3))) {
+            frontier.add(user(1), 1, 1.0);
+            assertThat(frontier.poll()).isPresent();
+
+            Thread.sleep(4_000);
+
+            assertThat(claim("b", Duration.ofMinutes(5))).isEmpty();
+        }
+    }
+
+    private LeasedUserFrontier frontier(String owner, Duration ttl) {
+        return new LeasedUserFrontier(database, CRAWL, owner, ttl);
+    }
+
+    private Optional<UserFrontier.Candidate> claim(String owner, Duration ttl) {
+        return database.claimLease(CRAWL, owner, ttl.toMillis());
+    }
+
+    private long id(UserFrontier.Candidate candidate) {
+        return candidate.getUser().getId();
+    }
+
+    private static UserFrontier.Candidate candidate(long id, double score) {
+        return new UserFrontier.Candidate(user(id), 1, score);
+    }
+
+    private static User user(long id) {
+        return new User(Map.of("id", id, "screenName", "user" + id));
+    }
+}
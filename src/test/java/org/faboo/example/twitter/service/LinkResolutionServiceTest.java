@@ -0,0 +1,116 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.util.ResolveResult;
+import org.faboo.example.twitter.util.UrlCanonicalizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LinkResolutionServiceTest {
+
+    private final LinkResolver resolver = mock(LinkResolver.class);
+    private final Database database = mock(Database.class);
+    private final LinkResolutionService service = new LinkResolutionService(resolver, UrlCanonicalizer.withDefaults(), database);
+
+    @Captor
+    private ArgumentCaptor<Collection<String>> resolved;
+    @Captor
+    private ArgumentCaptor<Map<String,ResolveResult>> persisted;
+
+    @AfterEach
+    void stop() {
+        service.stop();
+    }
+
+    @Test
+    void resolvesEnqueuedLinksInBackground() {
+
+        doAnswer(invocation -> {
+            Collection<String> links = invocation.getArgument(0);
+            BiConsumer<String,ResolveResult> consumer = invocation.getArgument(1);
+            links.forEach(link -> consumer.accept(link, mock(ResolveResult.class)));
+            return null;
+        }).when(resolver).resolve(anyCollection(), any());
+        service.start();
+
+        service.enqueue(List.of("http://a.com", "http://b.com"));
+        service.awaitIdle();
+
+        verify(resolver, atLeastOnce()).resolve(resolved.capture(), any());
+        assertThat(resolved.getAllValues().stream().flatMap(Collection::stream))
+                .containsExactlyInAnyOrder("http://a.com", "http://b.com");
+        verify(database, atLeastOnce()).persistLinks(persisted.capture());
+        assertThat(persisted.getAllValues().stream().flatMap(map -> map.keySet().stream()))
+                .containsExactlyInAnyOrder("http://a.com", "http://b.com");
+        verify(database, never()).findLinksToResolve();
+    }
+
+    @Test
+    void readsUnresolvedLinksFromDatabaseUntilNoneLeft() {
+
+        when(database.findLinksToResolve())
+                .thenReturn(Set.of("http://a.com"))
+                .thenReturn(Collections.emptySet());
+        service.start();
+
+        service.resolveMissing();
+        service.awaitIdle();
+
+        verify(resolver).resolve(argThat(links -> links.contains("http://a.com")), any());
+        verify(database, times(2)).findLinksToResolve();
+    }
+
+    @Test
+    void recordsLinksOfFailedBatchAsErrors() {
+
+        doThrow(new IllegalStateException("boom")).when(resolver).resolve(anyCollection(), any());
+        service.start();
+
+        service.enqueue(List.of("http://a.com"));
+        service.awaitIdle();
+
+        verify(database).persistLinks(persisted.capture());
+        ResolveResult result = persisted.getValue().get("http://a.com");
+        assertThat(result.isError()).isTrue();
+        assertThat(result.getError().getStatus()).isEqualTo(-1);
+        assertThat(result.getError().getMessage()).contains("boom");
+        assertThat(RetryPolicy.isTransient(result.getError())).isTrue();
+    }
+
+    @Test
+    void resolvesLinksAgainWhenPersistFailed() {
+
+        doAnswer(invocation -> {
+            Collection<String> links = invocation.getArgument(0);
+            BiConsumer<String,ResolveResult> consumer = invocation.getArgument(1);
+            links.forEach(link -> consumer.accept(link, mock(ResolveResult.class)));
+            return null;
+        }).when(resolver).resolve(anyCollection(), any());
+        doThrow(new IllegalStateException("database down")).doNothing().when(database).persistLinks(any());
+        when(database.findLinksToResolve())
+                .thenReturn(Set.of("http://a.com"))
+                .thenReturn(Collections.emptySet());
+        service.start();
+
+        service.enqueue(List.of("http://a.com"));
+        service.awaitIdle();
+
+        verify(resolver, times(2)).resolve(argThat(links -> links.contains("http://a.com")), any());
+        verify(database, times(2)).persistLinks(persisted.capture());
+        assertThat(persisted.getAllValues().get(1)).containsOnlyKeys("http://a.com");
+    }
+}
@@ -0,0 +1,72 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalUserFrontierTest {
+
+    @Test
+    void pollsHighestScoreFirst() {
+
+        LocalUserFrontier frontier = new LocalUserFrontier();
+        frontier.add(user(1), 1, 1.0);
+        frontier.add(user(2), 1, 3.0);
+        frontier.add(user(3), 1, 2.0);
+
+        assertThat(frontier.poll().orElseThrow().getUser().getId()).isEqualTo(2L);
+        assertThat(frontier.poll().orElseThrow().getUser().getId()).isEqualTo(3L);
+        assertThat(frontier.poll().orElseThrow().getUser().getId()).isEqualTo(1L);
+        assertThat(frontier.poll()).isEmpty();
+    }
+
+    @Test
+    void lowerDepthReplacesPendingEntry() {
+
+        LocalUserFrontier frontier = new LocalUserFrontier();
+        frontier.add(user(1), 2, 5.0);
+        assertThat(frontier.add(user(1), 1, 1.0)).isTrue();
+        assertThat(frontier.size()).isEqualTo(1);
+
+        UserFrontier.Candidate candidate = frontier.poll().orElseThrow();
+        assertThat(candidate.getDepth()).isEqualTo(1);
+        assertThat(frontier.poll()).isEmpty();
+    }
+
+    @Test
+    void doesNotRequeueOnSameOrDeeperDepth() {
+
+        LocalUserFrontier frontier = new LocalUserFrontier();
+        frontier.add(user(1), 1, 1.0);
+        frontier.poll();
+
+        assertThat(frontier.add(user(1), 1, 1.0)).isFalse();
+        assertThat(frontier.add(user(1), 2, 1.0)).isFalse();
+        assertThat(frontier.isEmpty()).isTrue();
+    }
+
+    @Test
+    void dormantUsersScoreLowest() {
+
+        UserScore dormant = new UserScore(1_000_000, 0, 3, 10);
+        UserScore active = new UserScore(10, 10, 0, 0);
+
+        assertThat(dormant.getScore()).isLessThan(active.getScore());
+    }
+
+    @Test
+    void hashtagOverlapRaisesScore() {
+
+        UserScore plain = new UserScore(100, 100, 0, 0);
+        UserScore overlapping = new UserScore(100, 100, 2, 0);
+
+        assertThat(overlapping.getScore()).isGreaterThan(plain.getScore());
+    }
+
+    private User user(long id) {
+        return new User(Map.of("id", id, "screenName", "user" + id));
+    }
+}
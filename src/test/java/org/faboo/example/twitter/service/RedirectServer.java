@@ -0,0 +1,132 @@
+package org.faboo.example.twitter.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local web server for the resolver benchmark. Every host is a loopback address {@code 127.0.1.x}, so the resolvers
+ * see many hosts while all requests end up here (this needs the whole 127.0.0.0/8 on the loopback, as on Linux).
+ * A link {@code /<hops>/<id>} redirects until the hops are used up. The first hosts are dead (their links use a
+ * closed port), the next ones are slow, the next ones answer {@code HEAD} with a 405 and the rest are normal.
+ */
+class RedirectServer implements AutoCloseable {
+
+    static final int MAX_HOSTS = 250;
+
+    private final int hosts;
+    private final int deadHosts;
+    private final int slowHosts;
+    private final int getOnlyHosts;
+    private final double meanLatencyMillis;
+    private final long slowMillis;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final int deadPort;
+    // first request of each link, to measure its latency
+    private final Map<String,Long> firstRequest = new ConcurrentHashMap<>();
+
+    RedirectServer(int hosts, int deadHosts, int slowHosts, int getOnlyHosts, double meanLatencyMillis,
+                   long slowMillis, int threads) throws IOException {
+        if (hosts > MAX_HOSTS || deadHosts + slowHosts + getOnlyHosts > hosts) {
+            throw new IllegalArgumentException("at most " + MAX_HOSTS + " hosts, including dead, slow and get-only");
+        }
+        this.hosts = hosts;
+        this.deadHosts = deadHosts;
+        this.slowHosts = slowHosts;
+        this.getOnlyHosts = getOnlyHosts;
+        this.meanLatencyMillis = meanLatencyMillis;
+        this.slowMillis = slowMillis;
+
+        // without these the server delays small responses and drops idle connections the clients still pool
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+        try (ServerSocket closed = new ServerSocket(0)) {
+            deadPort = closed.getLocalPort();
+        }
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        executor.prestartAllCoreThreads();
+        server = HttpServer.create(new InetSocketAddress(0), 1000);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return links spread evenly over all hosts
+     */
+    List<String> links(int count, int hops, String run) {
+        List<String> links = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int host = i % hosts;
+            int port = host < deadHosts ? deadPort : server.getAddress().getPort();
+            links.add("http://127.0.1." + (host + 1) + ":" + port + "/" + hops + "/" + run + "-" + i);
+        }
+        return links;
+    }
+
+    /**
+     * @return the time of the first request for the link in nanos, or null if it never arrived
+     */
+    Long firstRequest(String link) {
+        return firstRequest.get(link.substring(link.lastIndexOf('/') + 1));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            int hops = Integer.parseInt(path[1]);
+            firstRequest.putIfAbsent(path[2], System.nanoTime());
+
+            int host = (exchange.getLocalAddress().getAddress().getAddress()[3] & 0xff) - 1;
+            sleep(host < deadHosts + slowHosts ? slowMillis : latency());
+
+            boolean head = "HEAD".equals(exchange.getRequestMethod());
+            // the JDK server closes the connection after a HEAD, clients must not wait for it to be reused.
+            // GETs get an empty chunked body, without any length the connection would be closed as well
+            long length = head ? -1 : 0;
+            if (head) {
+                exchange.getResponseHeaders().add("Connection", "close");
+            }
+            if (head && host >= deadHosts + slowHosts && host < deadHosts + slowHosts + getOnlyHosts) {
+                exchange.sendResponseHeaders(405, length);
+            } else if (hops > 0) {
+                exchange.getResponseHeaders().add("Location", "/" + (hops - 1) + "/" + path[2]);
+                exchange.sendResponseHeaders(301, length);
+            } else {
+                exchange.sendResponseHeaders(200, length);
+            }
+        }
+    }
+
+    // exponentially distributed, most responses are fast and a few take several times the mean
+    private long latency() {
+        return Math.round(-meanLatencyMillis * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
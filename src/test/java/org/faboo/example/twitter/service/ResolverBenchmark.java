@@ -0,0 +1,229 @@
+package org.faboo.example.twitter.service;
+
+import ch.qos.logback.classic.Level;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.faboo.example.twitter.util.HopCache;
+import org.faboo.example.twitter.util.HostHealth;
+import org.faboo.example.twitter.util.HostThrottle;
+import org.faboo.example.twitter.util.RedirectResolver;
+import org.faboo.example.twitter.util.ResolveResult;
+import org.faboo.example.twitter.util.ResolverTraffic;
+import org.faboo.example.twitter.util.ShortenerClassifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Throughput and latency of the link resolvers against a local {@link RedirectServer}.
+ * Run the main method after {@code mvn test-compile}, with options like {@code links=5000 latency-ms=50}, see
+ * {@link #DEFAULTS}. Resolver changes should be compared with this before they are shipped.
+ * For every engine a warm up batch is resolved first, then the measured one. The latency of a link is the time from
+ * its first request at the server (or the start of the batch, if it never arrived) to its result. Threads are the
+ * peak number of threads of the resolver, heap the peak heap used during the batch.
+ */
+public class ResolverBenchmark {
+
+    private static final Map<String,String> DEFAULTS = Map.of(
+            "engines", "async,fork-join,redirect-resolver",
+            "links", "2000",
+            "warmup", "500",
+            "hops", "2",
+            "hosts", "50",
+            "dead-hosts", "2",
+            "slow-hosts", "1",
+            "get-only-hosts", "5",
+            "latency-ms", "20",
+            "slow-ms", "1000");
+
+    // threads of the redirect-resolver engine, one blocking request each
+    private static final int RESOLVER_THREADS = 200;
+
+    public static void main(String[] args) throws Exception {
+
+        // debug logging of every request would be measured as well
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        Map<String,String> options = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2 || !DEFAULTS.containsKey(option[0])) {
+                throw new IllegalArgumentException("unknown option " + arg + ", known are " + DEFAULTS);
+            }
+            options.put(option[0], option[1]);
+        }
+        int links = Integer.parseInt(options.get("links"));
+        int warmup = Integer.parseInt(options.get("warmup"));
+        int hops = Integer.parseInt(options.get("hops"));
+
+        try (RedirectServer server = new RedirectServer(Integer.parseInt(options.get("hosts")),
+                Integer.parseInt(options.get("dead-hosts")), Integer.parseInt(options.get("slow-hosts")),
+                Integer.parseInt(options.get("get-only-hosts")), Double.parseDouble(options.get("latency-ms")),
+                Long.parseLong(options.get("slow-ms")), 1000)) {
+
+            System.out.println("options: " + new TreeMap<>(options));
+            System.out.printf("%-18s %8s %10s %8s %8s %8s %8s %10s%n",
+                    "engine", "links", "links/s", "p50 ms", "p99 ms", "errors", "threads", "heap MB");
+            for (String engine : options.get("engines").split(",")) {
+                int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+                LinkResolver resolver = create(engine);
+                try {
+                    run(resolver, server, server.links(warmup, hops, engine + "-warmup"), threadsBefore);
+                    Result result = run(resolver, server, server.links(links, hops, engine), threadsBefore);
+                    System.out.printf("%-18s %8d %10.1f %8d %8d %8d %8d %10d%n", engine, links,
+                            links / (result.nanos / 1e9), result.percentile(50), result.percentile(99),
+                            result.errors, result.threads, result.heapBytes / (1024 * 1024));
+                } finally {
+                    if (resolver instanceof AsyncLinkResolver) {
+                        ((AsyncLinkResolver) resolver).close();
+                    } else if (resolver instanceof ForkJoinResolver) {
+                        ((ForkJoinResolver) resolver).close();
+                    } else if (resolver instanceof PooledRedirectResolver) {
+                        ((PooledRedirectResolver) resolver).close();
+                    }
+                }
+            }
+        }
+    }
+
+    private static LinkResolver create(String engine) throws Exception {
+
+        HostThrottle throttle = new HostThrottle(1000, 50);
+        HostHealth hostHealth = new HostHealth(Duration.ofMinutes(30), 100_000);
+        switch (engine) {
+            case "async":
+                return new AsyncLinkResolver(HopCache.disabled(), throttle, ShortenerClassifier.disabled(),
+                        new ResolverTraffic(), hostHealth);
+            case "fork-join":
+                return new ForkJoinResolver(HopCache.disabled(), throttle, ShortenerClassifier.disabled(),
+                        new ResolverTraffic(), hostHealth);
+            case "redirect-resolver":
+                return new PooledRedirectResolver(HttpClients.custom()
+                        .disableCookieManagement()
+                        .disableRedirectHandling()
+                        .setMaxConnPerRoute(50)
+                        .setMaxConnTotal(RESOLVER_THREADS)
+                        .build(), throttle, hostHealth);
+            default:
+                throw new IllegalArgumentException("unknown resolver engine " + engine);
+        }
+    }
+
+    private static Result run(LinkResolver resolver, RedirectServer server, List<String> links, int threadsBefore)
+            throws InterruptedException {
+
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        AtomicLong peakHeap = new AtomicLong();
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        Map<String,Long> done = new ConcurrentHashMap<>();
+        LongAdder errors = new LongAdder();
+        long start = System.nanoTime();
+        resolver.resolve(links, (link, result) -> {
+            done.put(link, System.nanoTime());
+            if (!result.isResolved()) {
+                errors.increment();
+            }
+        });
+        long nanos = System.nanoTime() - start;
+        sampler.interrupt();
+        sampler.join();
+
+        long[] latencies = done.entrySet().stream()
+                .mapToLong(entry -> {
+                    Long first = server.firstRequest(entry.getKey());
+                    return entry.getValue() - (first == null ? start : first);
+                })
+                .sorted()
+                .toArray();
+        // the threads of the server are all started up front, the sampler is not part of the resolver
+        int resolverThreads = threads.getPeakThreadCount() - threadsBefore - 1;
+        return new Result(nanos, latencies, errors.sum(), Math.max(0, resolverThreads), peakHeap.get());
+    }
+
+    private static class Result {
+        private final long nanos;
+        private final long[] latencies;
+        private final long errors;
+        private final int threads;
+        private final long heapBytes;
+
+        private Result(long nanos, long[] latencies, long errors, int threads, long heapBytes) {
+            this.nanos = nanos;
+            this.latencies = latencies;
+            this.errors = errors;
+            this.threads = threads;
+            this.heapBytes = heapBytes;
+        }
+
+        private long percentile(int percent) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percent / 100.0 * latencies.length) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(latencies[Math.max(0, index)]);
+        }
+    }
+
+    // a plain RedirectResolver on a fixed pool of blocking threads, without the fork join pool around it
+    private static class PooledRedirectResolver implements LinkResolver {
+
+        private final CloseableHttpClient httpClient;
+        private final RedirectResolver resolver;
+        private final ExecutorService pool = Executors.newFixedThreadPool(RESOLVER_THREADS);
+
+        private PooledRedirectResolver(CloseableHttpClient httpClient, HostThrottle throttle, HostHealth hostHealth) {
+            this.httpClient = httpClient;
+            this.resolver = new RedirectResolver(httpClient, HopCache.disabled(), throttle,
+                    ShortenerClassifier.disabled(), new ResolverTraffic(), hostHealth);
+        }
+
+        @Override
+        public void resolve(Collection<String> links, BiConsumer<String,ResolveResult> consumer) {
+            List<Future<?>> futures = new ArrayList<>();
+            links.forEach(link -> futures.add(pool.submit(() -> consumer.accept(link, resolver.resolve(link)))));
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        private void close() throws IOException {
+            pool.shutdownNow();
+            httpClient.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.util.RedirectResolver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RetryPolicyTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {-1, -6, 429, 500, 503, 504, 522})
+    void retriesTemporaryErrors(int status) {
+        assertThat(RetryPolicy.isTransient(error(status))).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {-2, 400, 401, 403, 404, 410})
+    void givesUpOnPermanentErrors(int status) {
+        assertThat(RetryPolicy.isTransient(error(status))).isFalse();
+    }
+
+    @Test
+    void triesOnceMoreThanItBacksOff() {
+        assertThat(RetryPolicy.getMaxAttempts()).isEqualTo(RetryPolicy.BACKOFF_MINUTES.size() + 1);
+        assertThat(RetryPolicy.BACKOFF_MINUTES).isSorted();
+    }
+
+    static RedirectResolver.ResolveError error(int status) {
+        RedirectResolver.ResolveError error = mock(RedirectResolver.ResolveError.class);
+        when(error.getStatus()).thenReturn(status);
+        when(error.getMessage()).thenReturn("status " + status);
+        return error;
+    }
+}
@@ -0,0 +1,54 @@
+package org.faboo.example.twitter.service;
+
+import org.faboo.example.twitter.data.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserScoreTest {
+
+    @Test
+    void unknownCountsDoNotMakeUserDormant() {
+
+        UserScore unknown = new UserScore(UserScore.UNKNOWN_COUNT, UserScore.UNKNOWN_COUNT, 1, 0);
+        UserScore dormant = new UserScore(100, 0, 1, 0);
+
+        assertThat(unknown.getScore()).isPositive();
+        assertThat(dormant.getScore()).isZero();
+    }
+
+    @Test
+    void takesCountsOfUserLoadedFromTwitter() {
+
+        UserScore counts = UserScore.counts(new User(Map.of("id", 1L, "screenName", "a",
+                "followersCount", 5000L, "tweetCount", 300L)));
+
+        assertThat(counts.getFollowersCount()).isEqualTo(5000);
+        assertThat(counts.getTweetCount()).isEqualTo(300);
+    }
+
+    @Test
+    void countsOfUserWithoutThemAreUnknown() {
+
+        UserScore counts = UserScore.counts(new User(Map.of("id", 1L, "screenName", "a")));
+
+        assertThat(counts.getFollowersCount()).isEqualTo(UserScore.UNKNOWN_COUNT);
+        assertThat(counts.getTweetCount()).isEqualTo(UserScore.UNKNOWN_COUNT);
+    }
+
+    @Test
+    void mergesKnownCountsIntoStoredScore() {
+
+        UserScore stored = new UserScore(UserScore.UNKNOWN_COUNT, 10, 2, 3);
+
+        UserScore merged = stored.withCountsOf(new UserScore(5000, UserScore.UNKNOWN_COUNT, 0, 0));
+
+        assertThat(merged.getFollowersCount()).isEqualTo(5000);
+        assertThat(merged.getTweetCount()).isEqualTo(10);
+        assertThat(merged.getHashtagOverlap()).isEqualTo(2);
+        assertThat(merged.getCrawledNeighbours()).isEqualTo(3);
+        assertThat(merged.getScore()).isGreaterThan(stored.getScore());
+    }
+}
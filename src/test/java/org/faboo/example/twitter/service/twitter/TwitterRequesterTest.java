@@ -0,0 +1,77 @@
+package org.faboo.example.twitter.service.twitter;
+
+import org.junit.jupiter.api.Test;
+import twitter4j.Paging;
+import twitter4j.RateLimitStatus;
+import twitter4j.ResponseList;
+import twitter4j.Status;
+import twitter4j.Twitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class TwitterRequesterTest {
+
+    @Test
+    void waitingForRateLimitDoesNotBlockOtherResources() throws Exception {
+
+        Twitter twitter = mock(Twitter.class);
+        when(twitter.getScreenName()).thenReturn("test");
+        Map<String,RateLimitStatus> limits = Map.of(
+                "/search/tweets", rateLimit(180, 0, 60),
+                "/statuses/user_timeline", rateLimit(900, 900, 60));
+        when(twitter.getRateLimitStatus()).thenReturn(limits);
+        ResponseList<Status> timeline = emptyResponse();
+        when(twitter.getUserTimeline(anyLong(), any(Paging.class))).thenReturn(timeline);
+        TwitterRequester requester = new TwitterRequester(twitter, "test");
+
+        Thread searching = new Thread(() -> {
+            try {
+                requester.search(new Query(List.of("#neo4j")));
+            } catch (RuntimeException e) {
+                // interrupted while waiting for the search rate limit
+            }
+        });
+        searching.start();
+        Thread.sleep(200);
+
+        try {
+            CompletableFuture<Integer> tweets = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return requester.getUserTimeline(1L, -1).size();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertThat(tweets.get(5, TimeUnit.SECONDS)).isZero();
+            assertThat(searching.isAlive()).isTrue();
+        } finally {
+            searching.interrupt();
+            searching.join();
+        }
+        verify(twitter, never()).search(any());
+    }
+
+    private static RateLimitStatus rateLimit(int limit, int remaining, int secondsUntilReset) {
+        RateLimitStatus status = mock(RateLimitStatus.class);
+        when(status.getLimit()).thenReturn(limit);
+        when(status.getRemaining()).thenReturn(remaining);
+        when(status.getSecondsUntilReset()).thenReturn(secondsUntilReset);
+        return status;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ResponseList<Status> emptyResponse() {
+        ResponseList<Status> response = mock(ResponseList.class);
+        when(response.stream()).thenAnswer(i -> Stream.empty());
+        return response;
+    }
+}
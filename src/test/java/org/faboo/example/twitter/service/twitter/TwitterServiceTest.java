@@ -0,0 +1,201 @@
+package org.faboo.example.twitter.service.twitter;
+
+import org.faboo.example.twitter.data.Tweet;
+import org.faboo.example.twitter.data.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import twitter4j.PagableResponseList;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TwitterServiceTest {
+
+    // one requester may load 12000 friends or followers per call, 200 per page
+    private static final int MAX_PAGES = 60;
+
+    private final TwitterRequester requester = mock(TwitterRequester.class);
+    private final TwitterService service = new TwitterService(List.of(requester));
+    private final User user = new User(Map.of("id", 1L, "screenName", "big"));
+
+    private final List<Long> friendsCursors = new ArrayList<>();
+    private final List<Long> followersCursors = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+
+        when(requester.isUsable(any())).thenReturn(true);
+        // every page of friends links to the next one, the followers fit on one page
+        when(requester.getFriendsOf(any(), anyLong())).thenAnswer(i -> page((long) i.getArgument(1) + 1000));
+        when(requester.getFollowersOf(any(), anyLong())).thenAnswer(i -> page(0));
+    }
+
+    @Test
+    void checkpointsListThatHitsPageCap() throws Exception {
+
+        boolean complete = fill();
+
+        assertThat(complete).isFalse();
+        assertThat(friendsCursors).hasSize(MAX_PAGES);
+        assertThat(user.getFriendsCursor()).isEqualTo(-1 + MAX_PAGES * 1000L);
+        assertThat(followersCursors).containsExactly(0L);
+        assertThat(user.hasOpenFollowsCursor()).isTrue();
+        assertThat(user.getProps()).doesNotContainKey("ffLastScanned");
+    }
+
+    @Test
+    void continuesOnlyTheOpenList() throws Exception {
+
+        fill();
+        long checkpoint = user.getFriendsCursor();
+        friendsCursors.clear();
+        followersCursors.clear();
+        // the remaining friends fit on one page
+        when(requester.getFriendsOf(any(), eq(checkpoint))).thenAnswer(i -> page(0));
+
+        boolean complete = fill();
+
+        assertThat(complete).isTrue();
+        assertThat(friendsCursors).containsExactly(0L);
+        assertThat(followersCursors).isEmpty();
+        verify(requester, times(1)).getFollowersOf(any(), anyLong());
+        verify(requester).getFriendsOf(any(), eq(checkpoint));
+        assertThat(user.hasOpenFollowsCursor()).isFalse();
+        assertThat(user.getProps()).containsKey("ffLastScanned");
+    }
+
+    @Test
+    void startsBothListsOverOnceComplete() throws Exception {
+
+        when(requester.getFriendsOf(any(), anyLong())).thenAnswer(i -> page(0));
+
+        assertThat(fill()).isTrue();
+        assertThat(fill()).isTrue();
+
+        verify(requester, times(2)).getFriendsOf(any(), eq(-1L));
+        verify(requester, times(2)).getFollowersOf(any(), eq(-1L));
+    }
+
+    @Test
+    void handsOutTimelinePagesWithMaxIdOfNextPage() throws Exception {
+
+        when(requester.getUserTimeline(1L, -1L)).thenAnswer(i -> tweets(1199, 200));
+        when(requester.getUserTimeline(1L, 999L)).thenAnswer(i -> tweets(999, 50));
+        List<Long> nextMaxIds = new ArrayList<>();
+
+        int count = service.fetchTimeline(user, -1, (page, nextMaxId) -> nextMaxIds.add(nextMaxId));
+
+        assertThat(count).isEqualTo(250);
+        assertThat(nextMaxIds).containsExactly(999L, 0L);
+        assertThat(user.tweetsNeedRescan(Duration.ofDays(1))).isFalse();
+    }
+
+    @Test
+    void continuesTimelineFromMaxId() throws Exception {
+
+        when(requester.getUserTimeline(1L, 999L)).thenAnswer(i -> tweets(999, 50));
+        List<Long> nextMaxIds = new ArrayList<>();
+
+        int count = service.fetchTimeline(user, 999, (page, nextMaxId) -> nextMaxIds.add(nextMaxId));
+
+        assertThat(count).isEqualTo(50);
+        assertThat(nextMaxIds).containsExactly(0L);
+        verify(requester, never()).getUserTimeline(1L, -1L);
+    }
+
+    @Test
+    void marksEmptyTimelineAsScanned() throws Exception {
+
+        when(requester.getUserTimeline(1L, -1L)).thenReturn(Collections.emptySet());
+        List<Set<Tweet>> pages = new ArrayList<>();
+
+        int count = service.fetchTimeline(user, -1, (page, nextMaxId) -> pages.add(page));
+
+        assertThat(count).isZero();
+        assertThat(pages).isEmpty();
+        // otherwise the refresh would pick the user again and again
+        assertThat(user.tweetsNeedRescan(Duration.ofDays(1))).isFalse();
+    }
+
+    @Test
+    void completesTimelineOnEmptyPage() throws Exception {
+
+        when(requester.getUserTimeline(1L, -1L)).thenAnswer(i -> tweets(1199, 200));
+        when(requester.getUserTimeline(1L, 999L)).thenReturn(Collections.emptySet());
+        List<Long> nextMaxIds = new ArrayList<>();
+
+        int count = service.fetchTimeline(user, -1, (page, nextMaxId) -> nextMaxIds.add(nextMaxId));
+
+        assertThat(count).isEqualTo(200);
+        assertThat(nextMaxIds).containsExactly(999L);
+        assertThat(user.getProps()).containsKey("tweetsLastScanned");
+    }
+
+    @Test
+    void searchMovesMaxIdOnlyAfterPageWasConsumed() {
+
+        Query query = new Query(List.of("#neo4j"));
+        when(requester.search(query)).thenAnswer(i -> query.getMaxId() == -1 ? tweets(1099, 100)
+                : query.getMaxId() == 999 ? tweets(999, 100) : Collections.emptySet());
+        List<Long> maxIds = new ArrayList<>();
+
+        assertThatThrownBy(() -> service.search(query, page -> {
+            maxIds.add(query.getMaxId());
+            if (maxIds.size() == 2) {
+                throw new IllegalStateException("database gone");
+            }
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(query.getMaxId()).isEqualTo(999);
+
+        int count = service.search(query, page -> maxIds.add(query.getMaxId()));
+
+        assertThat(count).isEqualTo(100);
+        assertThat(maxIds).containsExactly(-1L, 999L, 999L);
+        assertThat(query.getMaxId()).isEqualTo(899);
+    }
+
+    // checkpoints the cursors on the user the same way the crawl does
+    private boolean fill() throws UserNotReadableException {
+        return service.fillFriendsAndFollowers(user,
+                (friends, cursor) -> {
+                    friendsCursors.add(cursor);
+                    user.setFriendsCursor(cursor);
+                },
+                (followers, cursor) -> {
+                    followersCursors.add(cursor);
+                    user.setFollowersCursor(cursor);
+                });
+    }
+
+    // count tweets with descending ids, starting at the newest
+    private static Set<Tweet> tweets(long newest, int count) {
+        return LongStream.range(0, count)
+                .mapToObj(i -> {
+                    Tweet tweet = mock(Tweet.class);
+                    when(tweet.getId()).thenReturn(newest - i);
+                    return tweet;
+                })
+                .collect(Collectors.toSet());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PagableResponseList<twitter4j.User> page(long nextCursor) {
+        PagableResponseList<twitter4j.User> page = mock(PagableResponseList.class);
+        when(page.stream()).thenAnswer(i -> Stream.of(mock(twitter4j.User.class)));
+        when(page.hasNext()).thenReturn(nextCursor != 0);
+        when(page.getNextCursor()).thenReturn(nextCursor);
+        return page;
+    }
+}
@@ -0,0 +1,148 @@
+package org.faboo.example.twitter.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncRedirectResolverTest {
+
+    private HttpServer server;
+    private String base;
+    private final AtomicInteger busyRequests = new AtomicInteger();
+    private final AsyncRedirectResolver resolver = new AsyncRedirectResolver(
+            HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build(), HopCache.disabled(), HostThrottle.unlimited(),
+            ShortenerClassifier.disabled(), new ResolverTraffic(), HostHealth.disabled());
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/short", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/target");
+            exchange.sendResponseHeaders(301, -1);
+            exchange.close();
+        });
+        server.createContext("/target", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/get-only", exchange -> {
+            exchange.sendResponseHeaders("GET".equals(exchange.getRequestMethod()) ? 200 : 405, -1);
+            exchange.close();
+        });
+        server.createContext("/busy", exchange -> {
+            if (busyRequests.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        });
+        server.createContext("/loop", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/loop");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.start();
+        base = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void followsRedirects() {
+
+        ResolveResult result = resolver.resolve(base + "/short").join();
+
+        assertThat(result.isResolved()).isTrue();
+        assertThat(result.getUrl()).isEqualTo(base + "/target");
+    }
+
+    @Test
+    void fallsBackToGet() {
+
+        ResolveResult result = resolver.resolve(base + "/get-only").join();
+
+        assertThat(result.isResolved()).isTrue();
+    }
+
+    @Test
+    void retriesAfterThrottling() {
+
+        AsyncRedirectResolver throttled = new AsyncRedirectResolver(
+                HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build(), HopCache.disabled(),
+                new HostThrottle(10, 10), ShortenerClassifier.disabled(), new ResolverTraffic(), HostHealth.disabled());
+
+        ResolveResult result = throttled.resolve(base + "/busy").join();
+
+        assertThat(result.isResolved()).isTrue();
+        assertThat(busyRequests.get()).isEqualTo(2);
+    }
+
+    @Test
+    void failsFastOnRefusingHosts() throws IOException {
+
+        HostHealth hostHealth = new HostHealth(Duration.ofMinutes(1), 10);
+        AsyncRedirectResolver guarded = new AsyncRedirectResolver(
+                HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build(), HopCache.disabled(),
+                HostThrottle.unlimited(), ShortenerClassifier.disabled(), new ResolverTraffic(), hostHealth);
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+
+        for (int i = 0; i < HostHealth.FAILURES_TO_FAIL_FAST; i++) {
+            assertThat(guarded.resolve("http://localhost:" + closedPort + "/" + i).join().isError()).isTrue();
+        }
+        assertThat(hostHealth.getFailedFast()).isZero();
+
+        ResolveResult next = guarded.resolve("http://localhost:" + closedPort + "/next").join();
+
+        assertThat(next.isError()).isTrue();
+        assertThat(hostHealth.getFailedFast()).isEqualTo(1);
+    }
+
+    @Test
+    void reportsFailingHopCallbackAsError() {
+
+        HopCache failingCache = new HopCache(10, Duration.ofDays(1), null) {
+            @Override
+            void record(String url, ResolveResult result) {
+                throw new IllegalStateException("cache broken");
+            }
+        };
+        AsyncRedirectResolver failing = new AsyncRedirectResolver(
+                HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build(), failingCache,
+                HostThrottle.unlimited(), ShortenerClassifier.disabled(), new ResolverTraffic(), HostHealth.disabled());
+
+        ResolveResult result = failing.resolve(base + "/short").join();
+
+        assertThat(result.isError()).isTrue();
+        assertThat(result.getUrl()).isEqualTo(base + "/short");
+        assertThat(result.getError().getStatus()).isEqualTo(-9);
+        assertThat(result.getError().getMessage()).contains("cache broken");
+    }
+
+    @Test
+    void stopsRedirectLoops() {
+
+        ResolveResult result = resolver.resolve(base + "/loop").join();
+
+        assertThat(result.isError()).isTrue();
+        assertThat(result.getUrl()).isEqualTo(base + "/loop");
+        assertThat(result.getError().getStatus()).isEqualTo(-2);
+    }
+}
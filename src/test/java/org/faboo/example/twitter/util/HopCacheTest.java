@@ -0,0 +1,48 @@
+package org.faboo.example.twitter.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HopCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void survivesRestart() throws IOException {
+
+        Path file = dir.resolve("hops.tsv");
+        HopCache cache = new HopCache(100, Duration.ofDays(1), file);
+        cache.record("https://t.co/abc", ResolveResult.moved("https://t.co/abc", "https://bit.ly/xyz"));
+        cache.record("https://example.com/", ResolveResult.resolved("https://example.com/"));
+        cache.save();
+
+        HopCache restarted = new HopCache(100, Duration.ofDays(1), file);
+        restarted.load();
+
+        assertThat(restarted.lookup("https://t.co/abc").getUrl()).isEqualTo("https://bit.ly/xyz");
+        assertThat(restarted.lookup("https://example.com/").isResolved()).isTrue();
+        assertThat(restarted.lookup("https://unknown.com/")).isNull();
+        assertThat(restarted.getHits()).isEqualTo(2);
+        assertThat(restarted.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void ignoresExpiredHops() throws IOException {
+
+        Path file = dir.resolve("hops.tsv");
+        Files.write(file, List.of("0\thttps://t.co/abc\thttps://bit.ly/xyz"));
+        HopCache cache = new HopCache(100, Duration.ofDays(1), file);
+        cache.load();
+
+        assertThat(cache.lookup("https://t.co/abc")).isNull();
+    }
+}
@@ -0,0 +1,90 @@
+package org.faboo.example.twitter.util;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HostHealthTest {
+
+    private static final RedirectResolver.ResolveError ERROR = new RedirectResolver.ResolveError(-1, "refused");
+
+    private final HostHealth hostHealth = new HostHealth(Duration.ofMinutes(1), 100);
+
+    @Test
+    void failsFastOnlyAfterFailuresInARow() {
+
+        URI uri = URI.create("https://example.com/a");
+        for (int i = 1; i < HostHealth.FAILURES_TO_FAIL_FAST; i++) {
+            hostHealth.failed(uri, new ConnectException(), ERROR);
+            assertThat(hostHealth.check(uri)).isNull();
+        }
+
+        hostHealth.failed(uri, new ConnectException(), ERROR);
+
+        assertThat(hostHealth.check(URI.create("https://EXAMPLE.com/b")).getMessage()).contains("refused");
+        assertThat(hostHealth.getFailedFast()).isEqualTo(1);
+    }
+
+    @Test
+    void answerResetsTheFailures() {
+
+        URI uri = URI.create("https://example.com/a");
+        for (int i = 1; i < HostHealth.FAILURES_TO_FAIL_FAST; i++) {
+            hostHealth.failed(uri, new ConnectException(), ERROR);
+        }
+        hostHealth.succeeded(uri);
+        hostHealth.failed(uri, new ConnectException(), ERROR);
+
+        assertThat(hostHealth.check(uri)).isNull();
+    }
+
+    @Test
+    void failsPortsOnTheirOwn() {
+
+        URI http = URI.create("http://example.com/a");
+        for (int i = 0; i < HostHealth.FAILURES_TO_FAIL_FAST; i++) {
+            hostHealth.failed(http, new ConnectException(), ERROR);
+        }
+
+        assertThat(hostHealth.check(URI.create("http://example.com:80/b"))).isNotNull();
+        assertThat(hostHealth.check(URI.create("https://example.com/b"))).isNull();
+        assertThat(hostHealth.check(URI.create("http://example.com:8080/b"))).isNull();
+    }
+
+    @Test
+    void ignoresFailuresOfTheLink() {
+
+        URI uri = URI.create("https://example.com/a");
+        for (int i = 0; i < HostHealth.FAILURES_TO_FAIL_FAST; i++) {
+            hostHealth.failed(uri, new IOException("connection reset"), ERROR);
+        }
+
+        assertThat(hostHealth.check(uri)).isNull();
+    }
+
+    @Test
+    void neverFailsShortenersFastOnTimeouts() throws IOException {
+
+        HostHealth withShorteners = new HostHealth(Duration.ofMinutes(1), 100,
+                new ShortenerClassifier(List.of("my.short")));
+        URI shortener = URI.create("https://go.my.short/a");
+        for (int i = 0; i < HostHealth.FAILURES_TO_FAIL_FAST; i++) {
+            withShorteners.failed(shortener, new ConnectTimeoutException(), ERROR);
+        }
+
+        assertThat(withShorteners.check(shortener)).isNull();
+
+        for (int i = 0; i < HostHealth.FAILURES_TO_FAIL_FAST; i++) {
+            withShorteners.failed(shortener, new ConnectException(), ERROR);
+        }
+
+        assertThat(withShorteners.check(shortener)).isNotNull();
+    }
+}
@@ -0,0 +1,73 @@
+package org.faboo.example.twitter.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cost of finding the site of a resolved url, compared to the former regex loop.
+ * Run the main method after {@code mvn test-compile}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HostResolverBenchmark {
+
+    private static final List<Pattern> prefixesToDelete = Arrays.asList(
+            Pattern.compile("^(m\\.).*", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("^(www\\.).*", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("^(mobile\\.).*", Pattern.CASE_INSENSITIVE));
+
+    private static final int HOSTS = 1_000;
+
+    private final String[] urls = new String[HOSTS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] domains = {"example.com", "bbc.co.uk", "spiegel.de", "blogspot.com"};
+        String[] prefixes = {"www.", "m.", "news.", ""};
+        for (int i = 0; i < HOSTS; i++) {
+            urls[i] = "https://" + prefixes[i % prefixes.length] + "site" + (i / 16) + "."
+                    + domains[(i / 4) % domains.length] + "/path/to/article-" + i + "?id=" + i;
+        }
+    }
+
+    @Benchmark
+    public String site() throws MalformedURLException {
+        return HostResolver.getCleanedHost(nextUrl());
+    }
+
+    @Benchmark
+    public String regexLoop() throws MalformedURLException {
+        String host = new URL(nextUrl()).getHost();
+        for (Pattern pattern : prefixesToDelete) {
+            Matcher matcher = pattern.matcher(host);
+            if (matcher.find()) {
+                host = host.subSequence(matcher.group(1).length(), host.length()).toString();
+            }
+        }
+        return host;
+    }
+
+    private String nextUrl() {
+        next = (next + 1) % HOSTS;
+        return urls[next];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HostResolverBenchmark.class.getSimpleName()).build()).run();
+    }
+}
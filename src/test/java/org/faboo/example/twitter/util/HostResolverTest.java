@@ -47,6 +47,21 @@ class HostResolverTest {
         assertThat(cleanedHost).isEqualTo("instagram.com");
     }
 
+    @Test
+    void mustGroupSubdomainsBySite() throws MalformedURLException {
+
+        assertThat(HostResolver.getCleanedHost("https://news.bbc.co.uk/a")).isEqualTo("bbc.co.uk");
+        assertThat(HostResolver.getCleanedHost("https://WWW.BBC.co.uk:443/a?b=c")).isEqualTo("bbc.co.uk");
+        assertThat(HostResolver.getCleanedHost("https://user@foo.blogspot.com")).isEqualTo("foo.blogspot.com");
+    }
+
+    @Test
+    void mustKeepHostsWithoutPublicSuffix() throws MalformedURLException {
+
+        assertThat(HostResolver.getCleanedHost("http://127.0.0.1:8080/a")).isEqualTo("127.0.0.1");
+        assertThat(HostResolver.getCleanedHost("http://www.localhost/a")).isEqualTo("localhost");
+    }
+
     @Test
     void buildAbsoluteUrlAlreadyComplete() throws MalformedURLException {
 
@@ -0,0 +1,180 @@
+package org.faboo.example.twitter.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HostThrottleTest {
+
+    @Test
+    void halvesLimitOncePerBackOffAndGrowsItAgain() {
+
+        HostThrottle throttle = new HostThrottle(100, 10);
+        List<CompletableFuture<HostThrottle.Permit>> running = acquire(throttle, "example.com", 4);
+        List<CompletableFuture<HostThrottle.Permit>> queued = acquire(throttle, "example.com", 3);
+        assertThat(running).allMatch(CompletableFuture::isDone);
+        assertThat(queued).noneMatch(CompletableFuture::isDone);
+
+        // the limit drops from 4 to 2, the later errors saw the old limit and do not halve it again
+        throttle.release(running.get(0).join(), -1, null);
+        throttle.release(running.get(1).join(), -1, null);
+        assertThat(queued).noneMatch(CompletableFuture::isDone);
+        throttle.release(running.get(2).join(), -1, null);
+        assertThat(queued.stream().filter(CompletableFuture::isDone).count()).isEqualTo(1);
+
+        // a fast response grows the limit to 2.5, making room for both remaining requests
+        throttle.release(running.get(3).join(), 200, null);
+        assertThat(queued).allMatch(CompletableFuture::isDone);
+    }
+
+    @Test
+    void keepsLimitAtMaxPerHost() {
+
+        HostThrottle throttle = new HostThrottle(100, 2);
+        for (int i = 0; i < 20; i++) {
+            throttle.release(throttle.acquire("example.com").join(), 200, null);
+        }
+
+        assertThat(acquire(throttle, "example.com", 3).stream().filter(CompletableFuture::isDone).count())
+                .isEqualTo(2);
+    }
+
+    @Test
+    void handsPermitsToWaitingHostsInTurn() {
+
+        HostThrottle throttle = new HostThrottle(2, 10);
+        List<CompletableFuture<HostThrottle.Permit>> busy = acquire(throttle, "t.co", 4);
+        CompletableFuture<HostThrottle.Permit> other = throttle.acquire("example.com");
+        assertThat(other).isNotDone();
+
+        throttle.release(busy.get(0).join(), 200, null);
+        throttle.release(busy.get(1).join(), 200, null);
+
+        assertThat(busy.get(2)).isDone();
+        assertThat(other).isDone();
+        assertThat(busy.get(3)).isNotDone();
+    }
+
+    @Test
+    void parsesRetryAfterInSeconds() {
+
+        Instant now = Instant.now();
+
+        assertThat(HostThrottle.parseRetryAfter("120", now)).isEqualTo(Duration.ofSeconds(120));
+        assertThat(HostThrottle.parseRetryAfter(" 5 ", now)).isEqualTo(Duration.ofSeconds(5));
+        assertThat(HostThrottle.parseRetryAfter("-5", now)).isZero();
+    }
+
+    @Test
+    void parsesRetryAfterAsHttpDate() {
+
+        Instant now = Instant.parse("2021-06-01T10:00:00Z");
+        String inAMinute = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.ofInstant(now.plusSeconds(60), ZoneOffset.UTC));
+        String aMinuteAgo = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.ofInstant(now.minusSeconds(60), ZoneOffset.UTC));
+
+        assertThat(HostThrottle.parseRetryAfter(inAMinute, now)).isEqualTo(Duration.ofSeconds(60));
+        assertThat(HostThrottle.parseRetryAfter("Tue, 01 Jun 2021 10:00:30 GMT", now))
+                .isEqualTo(Duration.ofSeconds(30));
+        assertThat(HostThrottle.parseRetryAfter(aMinuteAgo, now)).isZero();
+    }
+
+    @Test
+    void fallsBackToDefaultRetryAfter() {
+
+        Instant now = Instant.now();
+
+        assertThat(HostThrottle.parseRetryAfter(null, now)).isEqualTo(HostThrottle.DEFAULT_RETRY_AFTER);
+        assertThat(HostThrottle.parseRetryAfter("", now)).isEqualTo(HostThrottle.DEFAULT_RETRY_AFTER);
+        assertThat(HostThrottle.parseRetryAfter("soon", now)).isEqualTo(HostThrottle.DEFAULT_RETRY_AFTER);
+    }
+
+    @Test
+    void blocksThrottlingHostUntilRetryAfter() throws Exception {
+
+        HostThrottle throttle = new HostThrottle(100, 10);
+        throttle.release(throttle.acquire("example.com").join(), 429, "1");
+        long start = System.nanoTime();
+
+        CompletableFuture<HostThrottle.Permit> next = throttle.acquire("example.com");
+
+        assertThat(next).isNotDone();
+        assertThat(throttle.blockedFor("example.com")).isPositive();
+        assertThat(throttle.acquire("other.com")).isDone();
+        next.get(5, TimeUnit.SECONDS);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(900));
+    }
+
+    @Test
+    void wakesBlockedHostWhenTimerFiresEarly() throws Exception {
+
+        // the throttle sees less time pass than the timer, so the timer always fires before the block ends
+        HostThrottle throttle = new HostThrottle(100, 10, new SlowClock());
+        throttle.release(throttle.acquire("example.com").join(), 429, "1");
+
+        CompletableFuture<HostThrottle.Permit> next = throttle.acquire("example.com");
+
+        assertThat(next).isNotDone();
+        next.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void evictsIdleHosts() {
+
+        HostThrottle throttle = new HostThrottle(100, 10);
+        throttle.release(throttle.acquire("idle.com").join(), 200, null);
+        throttle.release(throttle.acquire("blocked.com").join(), 429, "60");
+        throttle.acquire("busy.com");
+
+        throttle.evictIdle(Instant.now().minusSeconds(60));
+
+        assertThat(throttle.hostCount()).isEqualTo(3);
+
+        throttle.evictIdle(Instant.now().plusSeconds(1));
+
+        assertThat(throttle.hostCount()).isEqualTo(2);
+        assertThat(throttle.blockedFor("blocked.com")).isPositive();
+    }
+
+    private static List<CompletableFuture<HostThrottle.Permit>> acquire(HostThrottle throttle, String host, int count) {
+        List<CompletableFuture<HostThrottle.Permit>> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            permits.add(throttle.acquire(host));
+        }
+        return permits;
+    }
+
+    private static class SlowClock extends Clock {
+
+        private final Instant start = Instant.now();
+        private final long startNanos = System.nanoTime();
+
+        @Override
+        public Instant instant() {
+            return start.plusNanos((System.nanoTime() - startNanos) * 9 / 10);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
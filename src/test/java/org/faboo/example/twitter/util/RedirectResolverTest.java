@@ -2,20 +2,22 @@ package org.faboo.example.twitter.util;
 
 import org.apache.http.ProtocolVersion;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicStatusLine;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 class RedirectResolverTest {
 
     private final ProtocolVersion version = new ProtocolVersion("http", 1, 1);
+    private final ArgumentCaptor<HttpRequestBase> requests = ArgumentCaptor.forClass(HttpRequestBase.class);
 
     @Test
     void status200() throws IOException {
@@ -34,4 +36,45 @@ class RedirectResolverTest {
         assertThat(result.isResolved()).isEqualTo(true);
         assertThat(result.getHostName()).isEqualTo(hostResolver.getCleanedHost(url));
     }
+
+    @Test
+    void sendsOnlyHeadWhenHostAllowsIt() throws IOException {
+
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        RedirectResolver resolver = new RedirectResolver(httpClient);
+        CloseableHttpResponse ok = response(200, "Ok");
+        when(httpClient.execute(any())).thenReturn(ok);
+
+        assertThat(resolver.resolve("http://go.gl/fooba").isResolved()).isTrue();
+
+        verify(httpClient).execute(requests.capture());
+        assertThat(requests.getValue().getMethod()).isEqualTo("HEAD");
+        assertThat(requests.getValue().isAborted()).isFalse();
+    }
+
+    @Test
+    void abortsBodyOfGetFallback() throws IOException {
+
+        CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+        RedirectResolver resolver = new RedirectResolver(httpClient);
+        CloseableHttpResponse badMethod = response(405, "Method Not Allowed");
+        CloseableHttpResponse ok = response(200, "Ok");
+        when(httpClient.execute(any())).thenReturn(badMethod, ok);
+
+        assertThat(resolver.resolve("http://go.gl/fooba").isResolved()).isTrue();
+
+        verify(httpClient, times(2)).execute(requests.capture());
+        HttpRequestBase head = requests.getAllValues().get(0);
+        HttpRequestBase get = requests.getAllValues().get(1);
+        assertThat(head.getMethod()).isEqualTo("HEAD");
+        assertThat(head.isAborted()).isFalse();
+        assertThat(get.getMethod()).isEqualTo("GET");
+        assertThat(get.isAborted()).isTrue();
+    }
+
+    private CloseableHttpResponse response(int status, String reason) {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(version, status, reason));
+        return response;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package org.faboo.example.twitter.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShortenerClassifierTest {
+
+    @Test
+    void alwaysRequestsShorteners() throws IOException {
+
+        ShortenerClassifier classifier = new ShortenerClassifier(List.of("my.short"));
+
+        assertThat(classifier.needsRequest("https://t.co/abc")).isTrue();
+        assertThat(classifier.needsRequest("https://on.wsj.com/abc")).isTrue();
+        assertThat(classifier.needsRequest("https://go.my.short/abc")).isTrue();
+    }
+
+    @Test
+    void learnsHostsThatNeverRedirect() throws IOException {
+
+        ShortenerClassifier classifier = new ShortenerClassifier(List.of());
+        for (int i = 0; i < ShortenerClassifier.MIN_PROBES; i++) {
+            assertThat(classifier.needsRequest("https://example.com/" + i)).isTrue();
+            classifier.record("https://example.com/" + i, ResolveResult.resolved("https://example.com/" + i));
+        }
+
+        assertThat(classifier.needsRequest("https://example.com/new")).isFalse();
+        assertThat(classifier.getAvoided()).isEqualTo(1);
+
+        classifier.record("https://example.com/moved", ResolveResult.moved("https://example.com/moved", "/new"));
+
+        assertThat(classifier.needsRequest("https://example.com/new")).isTrue();
+    }
+}
@@ -0,0 +1,65 @@
+package org.faboo.example.twitter.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of canonicalizing a resolved url, with and without the cache.
+ * Run the main method after {@code mvn test-compile}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UrlCanonicalizerBenchmark {
+
+    private static final int URLS = 1_000;
+
+    private final UrlCanonicalizer canonicalizer = UrlCanonicalizer.withDefaults();
+    private final String[] urls = new String[URLS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < URLS; i++) {
+            switch (i % 4) {
+                case 0:
+                    urls[i] = "https://www.example.com/news/article-" + i;
+                    break;
+                case 1:
+                    urls[i] = "https://WWW.Example.com:443/news/article-" + i + "/?utm_source=twitter&utm_medium=social";
+                    break;
+                case 2:
+                    urls[i] = "http://blog.example.org/" + i + "?id=" + i + "&fbclid=IwAR0abcdefghijklmnop#comments";
+                    break;
+                default:
+                    urls[i] = "https://shop.example.net/p?" + "q=" + i + "&page=2&ref_src=twsrc%5Etfw";
+            }
+        }
+    }
+
+    @Benchmark
+    public String cached() {
+        return canonicalizer.canonicalize(nextUrl());
+    }
+
+    @Benchmark
+    public String uncached() {
+        return canonicalizer.normalize(nextUrl());
+    }
+
+    private String nextUrl() {
+        next = (next + 1) % URLS;
+        return urls[next];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(UrlCanonicalizerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,46 @@
+package org.faboo.example.twitter.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UrlCanonicalizerTest {
+
+    private final UrlCanonicalizer canonicalizer = UrlCanonicalizer.withDefaults();
+
+    @Test
+    void collapsesVariantsOfTheSameUrl() {
+
+        assertThat(canonicalizer.canonicalize("HTTPS://WWW.Example.COM:443/News/Article/?utm_source=twitter#top"))
+                .isEqualTo("https://www.example.com/News/Article");
+        assertThat(canonicalizer.canonicalize("https://www.example.com/News/Article?fbclid=abc&UTM_Medium=social"))
+                .isEqualTo("https://www.example.com/News/Article");
+        assertThat(canonicalizer.canonicalize("http://example.com")).isEqualTo("http://example.com/");
+        assertThat(canonicalizer.canonicalize("http://user@example.com:8080/a?b=1&gclid=2&c"))
+                .isEqualTo("http://user@example.com:8080/a?b=1&c");
+        assertThat(canonicalizer.canonicalize("http://[::1]:80/a?b=1")).isEqualTo("http://[::1]/a?b=1");
+    }
+
+    @Test
+    void appliesConfiguredRules() {
+
+        UrlCanonicalizer custom = new UrlCanonicalizer(List.of("session", "ref*"), false, true, 10);
+
+        assertThat(custom.canonicalize("https://example.com/a/?z=1&session=x&referrer=y&a=2&utm_source=t"))
+                .isEqualTo("https://example.com/a/?a=2&utm_source=t&z=1");
+    }
+
+    @Test
+    void leavesOtherResultsAlone() {
+
+        ResolveResult moved = ResolveResult.moved("https://t.co/abc", "https://Example.com/?utm_source=t");
+
+        assertThat(canonicalizer.canonicalize(moved)).isSameAs(moved);
+        assertThat(canonicalizer.canonicalize("not an url")).isEqualTo("not an url");
+        assertThat(canonicalizer.canonicalize(ResolveResult.resolved("https://Example.com/?utm_source=t")).getUrl())
+                .isEqualTo("https://example.com/");
+        assertThat(canonicalizer.getRewritten()).isEqualTo(1);
+    }
+}